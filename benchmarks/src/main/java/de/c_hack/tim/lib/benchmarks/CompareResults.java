@@ -0,0 +1,148 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Compares two JMH result files written with {@code -rf csv}.
+ * 
+ * Usage: {@code CompareResults <baseline.csv> <current.csv> [threshold%]}
+ * 
+ * Prints the change of every benchmark found in both files. A benchmark
+ * regressed, if it got worse by more than the threshold (default 5%) and by
+ * more than the errors of both runs together. The exit code is 1, if any
+ * benchmark regressed.
+ * 
+ * @author Tim Neumann
+ */
+public class CompareResults {
+
+	/**
+	 * @param args
+	 *            The baseline file, the current file and optionally the
+	 *            threshold in percent.
+	 * @throws IOException
+	 *             When a file can't be read.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: CompareResults <baseline.csv> <current.csv> [threshold%]");
+			System.exit(2);
+		}
+		double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 5;
+		Map<String, Result> baseline = read(args[0]);
+		Map<String, Result> current = read(args[1]);
+
+		boolean regressed = false;
+		for (Entry<String, Result> e : current.entrySet()) {
+			Result base = baseline.get(e.getKey());
+			Result cur = e.getValue();
+			if (base == null) {
+				System.out.println(String.format("%-80s new: %.3f %s", e.getKey(), cur.score, cur.unit));
+				continue;
+			}
+			double change = (cur.score - base.score) / base.score * 100;
+			boolean lowerIsBetter = !cur.mode.equals("thrpt");
+			double worse = lowerIsBetter ? cur.score - base.score : base.score - cur.score;
+			boolean isRegression = worse > base.error + cur.error && Math.abs(change) > threshold;
+			regressed |= isRegression;
+			System.out.println(String.format("%-80s %12.3f -> %12.3f %-8s %+7.1f%%%s", e.getKey(), base.score, cur.score, cur.unit, change, isRegression ? "  REGRESSION" : ""));
+		}
+		System.exit(regressed ? 1 : 0);
+	}
+
+	/**
+	 * Reads the results of a CSV file by benchmark name and parameters.
+	 */
+	private static Map<String, Result> read(String file) throws IOException {
+		List<String> lines = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+		List<String> header = split(lines.get(0));
+		Map<String, Result> ret = new LinkedHashMap<>();
+		for (String line : lines.subList(1, lines.size())) {
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			List<String> fields = split(line);
+			StringBuilder key = new StringBuilder(fields.get(header.indexOf("Benchmark")));
+			for (int i = 0; i < header.size(); i++) {
+				if (header.get(i).startsWith("Param: ") && !fields.get(i).isEmpty()) {
+					key.append(' ').append(header.get(i).substring(7)).append('=').append(fields.get(i));
+				}
+			}
+			key.append(" (").append(fields.get(header.indexOf("Threads"))).append(" threads)");
+			Result result = new Result();
+			result.mode = fields.get(header.indexOf("Mode"));
+			result.score = parse(fields.get(header.indexOf("Score")));
+			result.error = parse(fields.get(header.indexOf("Score Error (99.9%)")));
+			result.unit = fields.get(header.indexOf("Unit"));
+			ret.put(key.toString(), result);
+		}
+		return ret;
+	}
+
+	private static double parse(String number) {
+		if (number.isEmpty() || number.equals("NaN")) return 0;
+		//JMH writes the numbers in the default locale.
+		return Double.parseDouble(number.replace(',', '.'));
+	}
+
+	/**
+	 * Splits a CSV line. Fields may be quoted.
+	 */
+	private static List<String> split(String line) {
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"') {
+				if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				}
+				else {
+					quoted = !quoted;
+				}
+			}
+			else if (c == ',' && !quoted) {
+				fields.add(field.toString());
+				field.setLength(0);
+			}
+			else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+
+	/**
+	 * One line of a result file.
+	 */
+	private static class Result {
+		String mode;
+		double score;
+		double error;
+		String unit;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.c_hack.tim.lib.Config;
+
+/**
+ * Benchmarks reading values from a {@link Config}.
+ * 
+ * @author Tim Neumann
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigBenchmark {
+	private static final int ENTRIES = 100;
+	private static final String[] KEYS = new String[ENTRIES];
+	static {
+		for (int i = 0; i < ENTRIES; i++) {
+			KEYS[i] = "key" + i;
+		}
+	}
+
+	private File dir;
+	private Config config;
+	private int next;
+
+	/**
+	 * Creates a config with {@value #ENTRIES} entries in a temporary
+	 * directory.
+	 * 
+	 * @throws IOException
+	 *             File system exceptions
+	 */
+	@Setup
+	public void setup() throws IOException {
+		this.dir = Files.createTempDirectory("timlib-config").toFile();
+		HashMap<String, String> fields = new HashMap<>();
+		for (int i = 0; i < ENTRIES; i++) {
+			fields.put("key" + i, "value" + i);
+		}
+		this.config = new Config(new File(this.dir, "bench.conf").getPath(), "Benchmark", fields);
+	}
+
+	/**
+	 * Deletes the config file.
+	 */
+	@TearDown
+	public void tearDown() {
+		for (File f : this.dir.listFiles()) {
+			f.delete();
+		}
+		this.dir.delete();
+	}
+
+	/**
+	 * Reads the entries one after another.
+	 * 
+	 * @return The read value.
+	 */
+	@Benchmark
+	public String getConfigValue() {
+		this.next = (this.next + 1) % ENTRIES;
+		return this.config.getConfigValue(KEYS[this.next]);
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.c_hack.tim.lib.DataManager.DataHandler;
+import de.c_hack.tim.lib.DataManager.DataObject;
+
+/**
+ * Benchmarks reading, setting, saving and loading data of a
+ * {@link DataHandler} with different numbers of objects.
+ * 
+ * @author Tim Neumann
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataHandlerBenchmark {
+
+	/**
+	 * Reads a random object.
+	 * 
+	 * @param state
+	 *            The handler.
+	 * @return The object.
+	 */
+	@Benchmark
+	public BenchData getData(InMemory state) {
+		return state.handler.getData(Long.valueOf(ThreadLocalRandom.current().nextInt(state.size)));
+	}
+
+	/**
+	 * Replaces a random object. With auto saving this includes writing the
+	 * file.
+	 * 
+	 * @param state
+	 *            The handler.
+	 * @throws IOException
+	 *             When saving fails.
+	 */
+	@Benchmark
+	public void setData(InMemory state) throws IOException {
+		state.handler.setData(new BenchData(ThreadLocalRandom.current().nextInt(state.size)));
+	}
+
+	/**
+	 * Saves all objects after one changed.
+	 * 
+	 * @param state
+	 *            The handler.
+	 * @throws IOException
+	 *             When saving fails.
+	 */
+	@Benchmark
+	public void saveData(Persisting state) throws IOException {
+		state.handler.saveData();
+	}
+
+	/**
+	 * Loads all objects.
+	 * 
+	 * @param state
+	 *            The handler.
+	 * @throws IOException
+	 *             When loading fails.
+	 * @throws ClassNotFoundException
+	 *             When loading fails.
+	 */
+	@Benchmark
+	public void loadData(Persisting state) throws IOException, ClassNotFoundException {
+		state.handler.loadData();
+	}
+
+	/**
+	 * A handler with auto saving on or off.
+	 */
+	@State(Scope.Benchmark)
+	public static class InMemory {
+		/** The number of objects. */
+		@Param({ "1000", "100000" })
+		public int size;
+		/** Whether auto saving is on. */
+		@Param({ "false", "true" })
+		public boolean autoSaving;
+
+		DataHandler<Long, BenchData> handler;
+		private File dir;
+
+		/**
+		 * Creates and fills the handler.
+		 * 
+		 * @throws IOException
+		 *             When saving fails.
+		 */
+		@Setup
+		public void setup() throws IOException {
+			this.dir = Files.createTempDirectory("timlib-data").toFile();
+			this.handler = create(this.dir, this.size, this.autoSaving);
+		}
+
+		/**
+		 * Deletes the files.
+		 */
+		@TearDown
+		public void tearDown() {
+			delete(this.dir);
+		}
+	}
+
+	/**
+	 * A handler without auto saving, that has a changed object before every
+	 * call.
+	 */
+	@State(Scope.Benchmark)
+	public static class Persisting {
+		/** The number of objects. */
+		@Param({ "1000", "100000" })
+		public int size;
+
+		DataHandler<Long, BenchData> handler;
+		private File dir;
+
+		/**
+		 * Creates and fills the handler.
+		 * 
+		 * @throws IOException
+		 *             When saving fails.
+		 */
+		@Setup
+		public void setup() throws IOException {
+			this.dir = Files.createTempDirectory("timlib-data").toFile();
+			this.handler = create(this.dir, this.size, false);
+		}
+
+		/**
+		 * Changes one object, so that there is something to save.
+		 * 
+		 * @throws IOException
+		 *             Never, as auto saving is off.
+		 */
+		@Setup(Level.Invocation)
+		public void change() throws IOException {
+			this.handler.setData(new BenchData(ThreadLocalRandom.current().nextInt(this.size)));
+		}
+
+		/**
+		 * Deletes the files.
+		 */
+		@TearDown
+		public void tearDown() {
+			delete(this.dir);
+		}
+	}
+
+	/**
+	 * Creates a handler in the given directory with the given number of
+	 * objects, which are saved.
+	 */
+	static DataHandler<Long, BenchData> create(File dir, int size, boolean autoSaving) throws IOException {
+		DataHandler<Long, BenchData> handler = new DataHandler<>(BenchData.class, new File(dir, "bench.dat"), autoSaving);
+		List<BenchData> objects = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			objects.add(new BenchData(i));
+		}
+		handler.setAll(objects);
+		handler.saveData();
+		return handler;
+	}
+
+	static void delete(File dir) {
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	/**
+	 * A small data object.
+	 */
+	public static class BenchData extends DataObject<Long> {
+		private static final long serialVersionUID = 1L;
+
+		private final long id;
+		private final String name;
+		private final int[] values;
+
+		/**
+		 * @param p_id
+		 *            The id.
+		 */
+		public BenchData(long p_id) {
+			this(p_id, "Object " + p_id, new int[] { (int) p_id, 1, 2, 3 });
+		}
+
+		private BenchData(long p_id, String p_name, int[] p_values) {
+			this.id = p_id;
+			this.name = p_name;
+			this.values = p_values;
+		}
+
+		@Override
+		public Long getPrimaryID() {
+			return Long.valueOf(this.id);
+		}
+
+		@Override
+		public BenchData clone() {
+			return new BenchData(this.id, this.name, this.values.clone());
+		}
+	}
+}
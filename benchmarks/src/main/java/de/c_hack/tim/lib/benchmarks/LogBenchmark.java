@@ -0,0 +1,110 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.c_hack.tim.lib.Log;
+
+/**
+ * Benchmarks the throughput of {@link Log#log(String, int)} to a file with
+ * different numbers of threads logging concurrently.
+ * 
+ * @author Tim Neumann
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogBenchmark {
+	private File dir;
+	private Log log;
+
+	/**
+	 * Creates the logger with a file in a temporary directory.
+	 * 
+	 * @throws IOException
+	 *             File system exceptions
+	 */
+	@Setup
+	public void setup() throws IOException {
+		this.dir = Files.createTempDirectory("timlib-log").toFile();
+		this.log = new Log(new String[] { new File(this.dir, "bench.log").getPath() }, Log.INFO);
+	}
+
+	/**
+	 * Deletes the log file.
+	 */
+	@TearDown
+	public void tearDown() {
+		for (File f : this.dir.listFiles()) {
+			f.delete();
+		}
+		this.dir.delete();
+	}
+
+	/**
+	 * Logs from one thread.
+	 */
+	@Benchmark
+	@Threads(1)
+	public void log1Thread() {
+		this.log.log("Benchmark message", Log.INFO);
+	}
+
+	/**
+	 * Logs from 8 threads.
+	 */
+	@Benchmark
+	@Threads(8)
+	public void log8Threads() {
+		this.log.log("Benchmark message", Log.INFO);
+	}
+
+	/**
+	 * Logs from 64 threads.
+	 */
+	@Benchmark
+	@Threads(64)
+	public void log64Threads() {
+		this.log.log("Benchmark message", Log.INFO);
+	}
+
+	/**
+	 * Logs a message below the level of the file, so it is dropped.
+	 */
+	@Benchmark
+	@Threads(1)
+	public void logFiltered() {
+		this.log.log("Benchmark message", Log.DEBUG);
+	}
+}
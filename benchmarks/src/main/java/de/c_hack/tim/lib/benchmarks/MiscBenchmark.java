@@ -0,0 +1,90 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.c_hack.tim.lib.Misc;
+import de.c_hack.tim.lib.StringArrayIndex;
+
+/**
+ * Benchmarks searching a string in arrays of different sizes. The needle is
+ * the last element in a different case, so case sensitive searches don't
+ * find it and case insensitive searches have to look at every element.
+ * 
+ * @author Tim Neumann
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MiscBenchmark {
+	/** The number of elements. */
+	@Param({ "10", "1000", "100000" })
+	public int size;
+	/** Whether case matters. */
+	@Param({ "true", "false" })
+	public boolean caseSensitive;
+
+	private String[] haystack;
+	private String needle;
+	private StringArrayIndex index;
+
+	/**
+	 * Creates the array.
+	 */
+	@Setup
+	public void setup() {
+		this.haystack = new String[this.size];
+		for (int i = 0; i < this.size; i++) {
+			this.haystack[i] = "Keyword" + i;
+		}
+		this.needle = this.haystack[this.size - 1].toUpperCase();
+		this.index = new StringArrayIndex(this.haystack);
+	}
+
+	/**
+	 * Searches linearly.
+	 * 
+	 * @return The found index.
+	 */
+	@Benchmark
+	public int findStringInArr() {
+		return Misc.findStringInArr(this.haystack, this.needle, this.caseSensitive);
+	}
+
+	/**
+	 * Searches with the prebuilt index for comparison.
+	 * 
+	 * @return The found index.
+	 */
+	@Benchmark
+	public int stringArrayIndex() {
+		return this.index.find(this.needle, this.caseSensitive);
+	}
+}
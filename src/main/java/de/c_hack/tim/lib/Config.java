@@ -13,23 +13,51 @@
  */
 package de.c_hack.tim.lib;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
 
 /**
  * The automated configuration loader.
  * 
+ * Next to the config file a binary snapshot of it is kept in
+ * {@code <path>.cache}. As long as the modification time, the size and a CRC32
+ * of the content of the config file match the snapshot, the values are read
+ * from the snapshot instead of parsing the file. (The snapshot itself is
+ * checked with a CRC32 too, so a damaged snapshot is ignored. A snapshot that
+ * can't be written, for example in a read only directory, is just skipped.)
+ * 
  * @author Tim Neumann
  */
 public class Config {
+	/** Marks a snapshot file and its version. */
+	private static final int CACHE_MAGIC = 0x54434302;
+	/** Writes the files for configs with {@link WriteBack#BACKGROUND}. */
+	private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(Platform.backgroundThreads("Config writer"));
+
 	/** The propertie instant used. */
 	private Properties prop;
 	/** All entries that we want to use. */
@@ -38,6 +66,10 @@ public class Config {
 	private String path;
 	/** The starting comment for the configuartion file. */
 	private String comment;
+	/** When the missing defaults and the snapshot get written. */
+	private WriteBack writeBack;
+	/** The last write in the background or null. */
+	private Future<?> pendingWrite;
 
 	/**
 	 * Initializes this class and reads the config from disk if the file exists.
@@ -54,8 +86,30 @@ public class Config {
 	 *             When writing or reading from the file.
 	 */
 	public Config(String p_path, String startingComment, HashMap<String, String> fields) throws IOException {
+		this(p_path, startingComment, fields, WriteBack.SYNC);
+	}
+
+	/**
+	 * Initializes this class and reads the config from disk if the file exists.
+	 * Otherwise it will be created. Missing entries are written according to
+	 * the given write back mode.
+	 * 
+	 * @param p_path
+	 *            The path of the file.
+	 * @param startingComment
+	 *            The top comment.
+	 * @param fields
+	 *            A Map of Fields / Entries. For each name there must be a
+	 *            standard value.
+	 * @param p_writeBack
+	 *            When to write missing entries and the snapshot.
+	 * @throws IOException
+	 *             When writing or reading from the file.
+	 */
+	public Config(String p_path, String startingComment, HashMap<String, String> fields, WriteBack p_writeBack) throws IOException {
 		this.path = p_path;
 		this.comment = startingComment;
+		this.writeBack = p_writeBack;
 
 		this.entries = new HashMap<>();
 
@@ -76,29 +130,41 @@ public class Config {
 
 		this.prop = new Properties();
 
-		//Load existing file
-		try (InputStream iS = new FileInputStream(p_path);) {
-
-			this.prop.load(iS);
-
-			//Parsing File
-			boolean complete = true;
-			for (ConfigEntry entry : this.entries.values()) {
-				if (this.prop.containsKey(entry.name)) {
-					entry.setValue(this.prop.getProperty(entry.name));
-				}
-				else {
-					complete = false;
-					this.prop.setProperty(entry.getName(), entry.getStandardValue());
-					entry.setValue(entry.getStandardValue());
-				}
+		//Load existing file, from the snapshot if it is up to date.
+		File file = new File(p_path);
+		long lastModified = file.lastModified();
+		long length = file.length();
+		byte[] content = Files.readAllBytes(file.toPath());
+		long checksum = checksum(content);
+		Map<String, String> values = readCache(file, lastModified, length, checksum);
+		boolean cached = values != null;
+		if (!cached) {
+			this.prop.load(new ByteArrayInputStream(content));
+			values = new HashMap<>();
+			for (String name : this.prop.stringPropertyNames()) {
+				values.put(name, this.prop.getProperty(name));
 			}
+		}
 
-			//Write if not all options are present in file
-			if (!complete) {
-				writeConfToDisk();
+		//Parsing File
+		boolean complete = true;
+		for (ConfigEntry entry : this.entries.values()) {
+			if (values.containsKey(entry.name)) {
+				entry.setValue(values.get(entry.name));
+			}
+			else {
+				complete = false;
+				entry.setValue(entry.getStandardValue());
 			}
+		}
 
+		//Write if not all options are present in file
+		if (!complete && this.writeBack != WriteBack.NONE) {
+			write(this::writeConfToDisk);
+		}
+		else if (!cached) {
+			Map<String, String> toCache = values;
+			write(() -> writeCache(file, lastModified, length, checksum, toCache));
 		}
 	}
 
@@ -135,19 +201,218 @@ public class Config {
 	 * @throws IOException
 	 *             File system exceptions
 	 */
-	public void writeConfToDisk() throws IOException {
+	public synchronized void writeConfToDisk() throws IOException {
 
 		this.prop.clear();
 
+		HashMap<String, String> values = new HashMap<>();
 		for (ConfigEntry entry : this.entries.values()) {
 			this.prop.put(entry.name, entry.value);
+			values.put(entry.name, entry.value);
+		}
+
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		this.prop.store(content, this.comment);
+		byte[] bytes = content.toByteArray();
+
+		//Written in place, so a symlink and the permissions of the file are kept.
+		File file = new File(this.path);
+		try (OutputStream oS = new FileOutputStream(file)) {
+			oS.write(bytes);
+		}
+		writeCache(file, file.lastModified(), file.length(), checksum(bytes), values);
+	}
+
+	/**
+	 * Waits until the last write in the background is done.
+	 * 
+	 * @throws IOException
+	 *             When the write failed.
+	 */
+	public void awaitWriteBack() throws IOException {
+		Future<?> write;
+		synchronized (this) {
+			write = this.pendingWrite;
+		}
+		if (write == null) return;
+		try {
+			write.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the config to be written.");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Runs a write now or in the background, depending on the write back mode.
+	 */
+	private void write(IOAction action) throws IOException {
+		if (this.writeBack == WriteBack.SYNC) {
+			action.run();
+			return;
+		}
+		synchronized (this) {
+			this.pendingWrite = WRITER.submit(() -> {
+				action.run();
+				return null;
+			});
+		}
+	}
+
+	/**
+	 * Reads the snapshot of the given config file.
+	 * 
+	 * @return The values or null, if there is no valid snapshot for the given
+	 *         state of the file.
+	 */
+	private static Map<String, String> readCache(File file, long lastModified, long length, long checksum) {
+		File cache = new File(file.getPath() + ".cache");
+		if (!cache.isFile()) return null;
+		try {
+			byte[] data = Files.readAllBytes(cache.toPath());
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+			if (in.readInt() != CACHE_MAGIC) return null;
+			if (in.readLong() != lastModified || in.readLong() != length || in.readLong() != checksum) return null;
+			long crc = in.readLong();
+			int start = data.length - in.available();
+			CRC32 check = new CRC32();
+			check.update(data, start, data.length - start);
+			if (check.getValue() != crc) return null;
+
+			int count = in.readInt();
+			HashMap<String, String> values = new HashMap<>((int) (count / 0.75f) + 1);
+			for (int i = 0; i < count; i++) {
+				values.put(readString(in), readString(in));
+			}
+			return values;
+		} catch (IOException | RuntimeException e) {
+			//A broken snapshot is just ignored.
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the snapshot of the given config file, with the state of the file
+	 * the values were read from. Failures are ignored, the file is parsed
+	 * again next time.
+	 */
+	private static void writeCache(File file, long lastModified, long length, long checksum, Map<String, String> values) {
+		File cache = new File(file.getPath() + ".cache");
+		File tmp = new File(file.getPath() + ".cache.tmp");
+		try {
+			Files.deleteIfExists(tmp.toPath());
+			createOwnerOnly(tmp);
+			try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+				out.writeInt(CACHE_MAGIC);
+				out.writeLong(lastModified);
+				out.writeLong(length);
+				out.writeLong(checksum);
+				writePayload(out, values);
+			}
+			copyPermissions(file, tmp);
+			move(tmp, cache);
+		} catch (IOException | RuntimeException e) {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Writes the values of a snapshot, after the CRC32 of them.
+	 */
+	private static void writePayload(DataOutputStream out, Map<String, String> values) throws IOException {
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		DataOutputStream pOut = new DataOutputStream(payload);
+		pOut.writeInt(values.size());
+		for (Entry<String, String> e : values.entrySet()) {
+			writeString(pOut, e.getKey());
+			writeString(pOut, e.getValue());
 		}
+		pOut.flush();
+		byte[] data = payload.toByteArray();
+		out.writeLong(checksum(data));
+		out.write(data);
+	}
+
+	private static long checksum(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		return crc.getValue();
+	}
+
+	/**
+	 * Creates the file, only readable and writable by the owner where the file
+	 * system supports it.
+	 */
+	private static void createOwnerOnly(File file) throws IOException {
+		if (!file.toPath().getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			Files.createFile(file.toPath());
+			return;
+		}
+		Files.createFile(file.toPath(), PosixFilePermissions.asFileAttribute(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+	}
 
-		try (OutputStream oS = new FileOutputStream(this.path)) {
-			this.prop.store(oS, this.comment);
+	/**
+	 * Gives the target the permissions of the source, where the file system
+	 * supports it.
+	 */
+	private static void copyPermissions(File source, File target) throws IOException {
+		if (!target.toPath().getFileSystem().supportedFileAttributeViews().contains("posix")) return;
+		Files.setPosixFilePermissions(target.toPath(), Files.getPosixFilePermissions(source.toPath()));
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Renames the temporary snapshot over the target, atomically if possible.
+	 */
+	private static void move(File tmp, File target) throws IOException {
+		try {
+			Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
 		}
 	}
 
+	/**
+	 * A write to disk.
+	 */
+	@FunctionalInterface
+	private interface IOAction {
+		void run() throws IOException;
+	}
+
+	/**
+	 * When missing entries are written to the config file. The snapshot is
+	 * written the same way.
+	 */
+	public enum WriteBack {
+		/** In the constructor, before it returns. */
+		SYNC,
+		/**
+		 * In a background thread. See {@link Config#awaitWriteBack()}.
+		 */
+		BACKGROUND,
+		/**
+		 * Not at all. The file is only written by
+		 * {@link Config#writeConfToDisk()}. (The snapshot is still written in
+		 * the background.)
+		 */
+		NONE
+	}
+
 	/**
 	 * One config entry.
 	 */
@@ -0,0 +1,92 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.DataManager;
+
+/**
+ * A change of the data in a {@link DataHandler}.
+ * 
+ * @author Tim Neumann
+ * @param <I>
+ *            The type of the primary ID
+ * @param <T>
+ *            The type of the data.
+ */
+public final class DataChangeEvent<I, T extends DataObject<I>> {
+
+	/**
+	 * The kinds of changes.
+	 */
+	public enum Type {
+		/** A data object was added or replaced. */
+		PUT,
+		/** A data object was removed. */
+		REMOVE
+	}
+
+	private final Type type;
+	private final long sequence;
+	private final I key;
+	private final T value;
+
+	DataChangeEvent(Type p_type, long p_sequence, I p_key, T p_value) {
+		this.type = p_type;
+		this.sequence = p_sequence;
+		this.key = p_key;
+		this.value = p_value;
+	}
+
+	/**
+	 * Get's {@link #type type}
+	 * 
+	 * @return type
+	 */
+	public Type getType() {
+		return this.type;
+	}
+
+	/**
+	 * The sequence number of the change. Changes of one data handler have
+	 * increasing sequence numbers. Events replayed on subscription carry the
+	 * sequence number of the state they represent.
+	 * 
+	 * @return sequence
+	 */
+	public long getSequence() {
+		return this.sequence;
+	}
+
+	/**
+	 * Get's {@link #key key}
+	 * 
+	 * @return key
+	 */
+	public I getKey() {
+		return this.key;
+	}
+
+	/**
+	 * The new data object. This is a copy only for this subscription. null
+	 * for {@link Type#REMOVE}.
+	 * 
+	 * @return value
+	 */
+	public T getValue() {
+		return this.value;
+	}
+
+	@Override
+	public String toString() {
+		return this.type + "(" + this.sequence + ", " + this.key + ")";
+	}
+}
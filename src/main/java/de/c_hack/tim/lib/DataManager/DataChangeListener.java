@@ -0,0 +1,39 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.DataManager;
+
+import java.util.List;
+
+/**
+ * Receives the changes of a {@link DataHandler}. See
+ * {@link DataHandler#subscribe(DataChangeListener, java.util.concurrent.Executor, int, boolean)}.
+ * 
+ * @author Tim Neumann
+ * @param <I>
+ *            The type of the primary ID
+ * @param <T>
+ *            The type of the data.
+ */
+@FunctionalInterface
+public interface DataChangeListener<I, T extends DataObject<I>> {
+
+	/**
+	 * Called with the next changes in the order they happened. Calls for one
+	 * subscription never overlap.
+	 * 
+	 * @param events
+	 *            The changes.
+	 */
+	void onChanges(List<DataChangeEvent<I, T>> events);
+}
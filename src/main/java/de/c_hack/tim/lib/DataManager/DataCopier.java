@@ -0,0 +1,72 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.DataManager;
+
+/**
+ * Copies data objects for a {@link DataHandler}. The handler copies every
+ * object that is handed in or out, so that callers can't change the stored
+ * objects.
+ * 
+ * By default the objects are copied with {@link DataObject#clone()}. A
+ * hand-written copier (e.g. a copy constructor) can be cheaper, and objects
+ * of immutable types don't need to be copied at all. See {@link #identity()}.
+ * 
+ * A copier must return an object of exactly the same class as the given
+ * object. This is verified once for the first copy after registering the
+ * copier, not on every call.
+ * 
+ * @author Tim Neumann
+ * @param <T>
+ *            The type of the data.
+ */
+@FunctionalInterface
+public interface DataCopier<T> {
+
+	/**
+	 * Copies a data object.
+	 * 
+	 * @param original
+	 *            The object to copy. Never null.
+	 * @return A copy of the object, that doesn't share any mutable state with
+	 *         it.
+	 */
+	T copy(T original);
+
+	/**
+	 * A copier that returns the given objects themselves. Only use this for
+	 * immutable types.
+	 * 
+	 * @param <T>
+	 *            The type of the data.
+	 * @return The copier.
+	 */
+	static <T> DataCopier<T> identity() {
+		return original -> original;
+	}
+
+	/**
+	 * The default copier, which uses {@link DataObject#clone()}.
+	 * 
+	 * @param <T>
+	 *            The type of the data.
+	 * @return The copier.
+	 */
+	static <T extends DataObject<?>> DataCopier<T> cloning() {
+		return original -> {
+			@SuppressWarnings("unchecked")
+			T clone = (T) original.clone();
+			return clone;
+		};
+	}
+}
@@ -0,0 +1,428 @@
+/*
+ * TimLib
+ *
+ * A collection of useful classes and methods.
+ *
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.DataManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Reads and writes the data files of the {@link DataHandler}.
+ *
+ * There are two formats. The plain format is just the output of one
+ * ObjectOutputStream. The compressed format starts with {@link #MAGIC} and is
+ * followed by blocks of up to {@link #BLOCK_OBJECTS} objects. Each block is
+ * the deflated output of its own ObjectOutputStream prefixed by its raw and
+ * compressed length. As the blocks are independent, they are compressed and
+ * decompressed in parallel.
+ *
+ * The format is detected when reading, so both can be read regardless of the
+ * format used for writing.
+ *
+ * Files of at least {@link #MAP_THRESHOLD} bytes are read through a
+ * {@link MappedInputStream} instead of buffered file streams (except on
+ * Windows, see {@link #MAP_FILES}). That saves
+ * copying the data through intermediate buffers. The blocks of compressed
+ * files are copied directly from the mapping and decoded in parallel.
+ *
+ * Delta files use the same formats, but may also contain {@link Removal}
+ * objects for removed keys.
+ *
+ * @author Tim Neumann
+ */
+final class DataFiles {
+
+	/** The first bytes of a compressed data file. */
+	static final byte[] MAGIC = { 'T', 'L', 'Z', 1 };
+	/** The maximum number of objects in one compressed block. */
+	static final int BLOCK_OBJECTS = 1024;
+	/**
+	 * Files of at least this size are read through memory mapping, if
+	 * {@link #MAP_FILES} is set.
+	 *
+	 * A mapping is only released by the garbage collector. On Windows a file
+	 * can't be replaced or deleted while it is mapped, so saving over a file
+	 * that was just loaded (or deleting merged delta files) would fail.
+	 */
+	static final long MAP_THRESHOLD = 4 * 1024 * 1024;
+	/**
+	 * Whether large files are memory mapped at all. Off on Windows (see
+	 * {@link #MAP_THRESHOLD}), on otherwise. Can be overridden with the
+	 * system property {@code de.c_hack.tim.lib.mapDataFiles}.
+	 */
+	static final boolean MAP_FILES = Boolean.parseBoolean(System.getProperty("de.c_hack.tim.lib.mapDataFiles", String.valueOf(!System.getProperty("os.name", "").startsWith("Windows"))));
+
+	private DataFiles() {
+	}
+
+	/**
+	 * Writes the given objects to a temporary file, syncs it and renames it to
+	 * the given file.
+	 *
+	 * @param file
+	 *            The file to write.
+	 * @param objects
+	 *            The objects to write.
+	 * @param compressed
+	 *            Whether to use the compressed format.
+	 * @return The size of the written file.
+	 * @throws IOException
+	 *             If something goes wrong with the IO.
+	 */
+	static long write(File file, List<?> objects, boolean compressed) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		long size;
+		try (FileOutputStream fOS = new FileOutputStream(tmp)) {
+			BufferedOutputStream bOS = new BufferedOutputStream(fOS);
+			if (compressed) {
+				writeCompressed(bOS, objects);
+			}
+			else {
+				ObjectOutputStream oOS = new ObjectOutputStream(bOS);
+				for (Object obj : objects) {
+					oOS.writeObject(obj);
+				}
+				oOS.flush();
+			}
+			bOS.flush();
+			fOS.getFD().sync();
+			size = fOS.getChannel().position();
+		}
+		try {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return size;
+	}
+
+	/**
+	 * Reads all objects of the given file and checks their type.
+	 *
+	 * @param file
+	 *            The file to read.
+	 * @param type
+	 *            The exact type all objects must have.
+	 * @param progress
+	 *            The progress to update or null.
+	 * @return The objects in the file.
+	 * @throws IOException
+	 *             If something goes wrong with the IO.
+	 * @throws WrongObjectException
+	 *             If the file contains an object that is the wrong type.
+	 * @throws ClassNotFoundException
+	 *             If the class of an object in the file is not defined in this
+	 *             project.
+	 */
+	static <T> List<T> read(File file, Class<T> type, Progress progress) throws IOException, ClassNotFoundException {
+		@SuppressWarnings("unchecked")
+		List<T> ret = (List<T>) readAny(file, type, false, progress);
+		return ret;
+	}
+
+	/**
+	 * Reads all objects of the given delta file and checks their type.
+	 *
+	 * @param file
+	 *            The file to read.
+	 * @param type
+	 *            The exact type all objects, that are no {@link Removal}, must
+	 *            have.
+	 * @return The objects in the file.
+	 * @throws IOException
+	 *             If something goes wrong with the IO.
+	 * @throws WrongObjectException
+	 *             If the file contains an object that is the wrong type.
+	 * @throws ClassNotFoundException
+	 *             If the class of an object in the file is not defined in this
+	 *             project.
+	 */
+	static List<Object> readDelta(File file, Class<?> type) throws IOException, ClassNotFoundException {
+		return readAny(file, type, true, null);
+	}
+
+	private static List<Object> readAny(File file, Class<?> type, boolean allowRemovals, Progress progress) throws IOException, ClassNotFoundException {
+		try (FileInputStream fIS = new FileInputStream(file)) {
+			FileChannel channel = fIS.getChannel();
+			long size = channel.size();
+			MappedInputStream mapped = MAP_FILES && size >= MAP_THRESHOLD ? new MappedInputStream(channel, size) : null;
+			InputStream in = mapped != null ? mapped : new BufferedInputStream(fIS);
+
+			byte[] start = new byte[MAGIC.length];
+			in.mark(MAGIC.length);
+			int read = 0;
+			int r;
+			while (read < start.length && (r = in.read(start, read, start.length - read)) > 0) {
+				read += r;
+			}
+			if (read == MAGIC.length && Arrays.equals(start, MAGIC)) return readCompressed(new DataInputStream(in), type, allowRemovals, progress);
+			in.reset();
+			return readPlain(in, mapped != null ? mapped::position : channel::position, size, type, allowRemovals, progress);
+		}
+	}
+
+	/**
+	 * Waits for a task and throws the exception of the task, if it failed.
+	 *
+	 * @param task
+	 *            The task to wait for.
+	 * @return The result of the task.
+	 * @throws IOException
+	 *             If the task threw it.
+	 * @throws ClassNotFoundException
+	 *             If the task threw it.
+	 */
+	static <R> R join(ForkJoinTask<R> task) throws IOException, ClassNotFoundException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a data file task.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			//The pool wraps checked exceptions of callables in a plain RuntimeException. Rethrown in another thread, this gets wrapped once more.
+			while (cause != null && cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+				cause = cause.getCause();
+			}
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof ClassNotFoundException) throw (ClassNotFoundException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	private static void writeCompressed(BufferedOutputStream out, List<?> objects) throws IOException {
+		List<ForkJoinTask<Block>> blocks = new ArrayList<>();
+		for (int i = 0; i < objects.size(); i += BLOCK_OBJECTS) {
+			List<?> block = objects.subList(i, Math.min(objects.size(), i + BLOCK_OBJECTS));
+			blocks.add(ForkJoinPool.commonPool().submit(() -> encodeBlock(block)));
+		}
+
+		DataOutputStream dOS = new DataOutputStream(out);
+		dOS.write(MAGIC);
+		try {
+			for (ForkJoinTask<Block> task : blocks) {
+				Block block = join(task);
+				dOS.writeInt(block.rawLength);
+				dOS.writeInt(block.compressed.length);
+				dOS.write(block.compressed);
+			}
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+		dOS.flush();
+	}
+
+	/**
+	 * Serializes and deflates one block.
+	 */
+	private static Block encodeBlock(List<?> objects) throws IOException {
+		ByteArrayOutputStream raw = new ByteArrayOutputStream();
+		try (ObjectOutputStream oOS = new ObjectOutputStream(raw)) {
+			for (Object obj : objects) {
+				oOS.writeObject(obj);
+			}
+		}
+		byte[] rawBytes = raw.toByteArray();
+
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(rawBytes.length / 2 + 64);
+		try {
+			deflater.setInput(rawBytes);
+			deflater.finish();
+			byte[] buf = new byte[8192];
+			while (!deflater.finished()) {
+				compressed.write(buf, 0, deflater.deflate(buf));
+			}
+		} finally {
+			deflater.end();
+		}
+		return new Block(rawBytes.length, compressed.toByteArray());
+	}
+
+	private static List<Object> readCompressed(DataInputStream in, Class<?> type, boolean allowRemovals, Progress progress) throws IOException, ClassNotFoundException {
+		List<ForkJoinTask<List<Object>>> blocks = new ArrayList<>();
+		while (true) {
+			int rawLength;
+			try {
+				rawLength = in.readInt();
+			} catch (EOFException e) {
+				break;
+			}
+			byte[] compressed = new byte[in.readInt()];
+			in.readFully(compressed);
+			blocks.add(ForkJoinPool.commonPool().submit(() -> {
+				List<Object> objects = decodeBlock(compressed, rawLength, type, allowRemovals);
+				if (progress != null) {
+					progress.read(objects.size(), compressed.length + 8);
+				}
+				return objects;
+			}));
+		}
+
+		List<Object> ret = new ArrayList<>(blocks.size() * BLOCK_OBJECTS);
+		for (ForkJoinTask<List<Object>> task : blocks) {
+			ret.addAll(join(task));
+		}
+		return ret;
+	}
+
+	private static List<Object> decodeBlock(byte[] compressed, int rawLength, Class<?> type, boolean allowRemovals) throws IOException, ClassNotFoundException {
+		byte[] raw = new byte[rawLength];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed);
+			int done = 0;
+			while (done < rawLength) {
+				int n = inflater.inflate(raw, done, rawLength - done);
+				if (n == 0 && (inflater.finished() || inflater.needsInput())) throw new EOFException("Compressed block is truncated.");
+				done += n;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Compressed block is corrupt.", e);
+		} finally {
+			inflater.end();
+		}
+
+		List<Object> ret = new ArrayList<>(BLOCK_OBJECTS);
+		try (ObjectInputStream oIS = new ObjectInputStream(new ByteArrayInputStream(raw))) {
+			while (true) {
+				ret.add(checkType(oIS.readObject(), type, allowRemovals));
+			}
+		} catch (EOFException e) {
+			//Ignore. Just the way to know when done reading the block.
+		}
+		return ret;
+	}
+
+	private static List<Object> readPlain(InputStream in, Position position, long fileLength, Class<?> type, boolean allowRemovals, Progress progress) throws IOException, ClassNotFoundException {
+		List<Object> ret = new ArrayList<>();
+		long reportedBytes = 0;
+		try (ObjectInputStream oIS = new ObjectInputStream(in)) {
+			while (true) {
+				ret.add(checkType(oIS.readObject(), type, allowRemovals));
+				if (progress != null && ret.size() % Progress.INTERVAL == 0) {
+					long bytes = position.get();
+					progress.read(Progress.INTERVAL, bytes - reportedBytes);
+					reportedBytes = bytes;
+				}
+			}
+		} catch (EOFException e) {
+			//Ignore. Just the way to know when done reading the file.(Yes this is weird.)
+		}
+		if (progress != null) {
+			progress.read(ret.size() % Progress.INTERVAL, fileLength - reportedBytes);
+		}
+		return ret;
+	}
+
+	private static Object checkType(Object obj, Class<?> type, boolean allowRemovals) {
+		if (allowRemovals && obj.getClass().equals(Removal.class)) return obj;
+		if (!(obj.getClass().equals(type))) throw new WrongObjectException("There is a incompatible Object in the data file. Object Type:" + obj.getClass().getName(), obj.getClass());
+		return obj;
+	}
+
+	/**
+	 * The read position in a file.
+	 */
+	@FunctionalInterface
+	private interface Position {
+		long get() throws IOException;
+	}
+
+	/**
+	 * Marks a removed key in a delta file.
+	 */
+	static final class Removal implements Serializable {
+		private static final long serialVersionUID = 6154128095823618290L;
+		private final Object key;
+
+		Removal(Object p_key) {
+			this.key = p_key;
+		}
+
+		/**
+		 * @return The removed key.
+		 */
+		Object getKey() {
+			return this.key;
+		}
+	}
+
+	/**
+	 * A compressed block.
+	 */
+	private static class Block {
+		final int rawLength;
+		final byte[] compressed;
+
+		Block(int p_rawLength, byte[] p_compressed) {
+			this.rawLength = p_rawLength;
+			this.compressed = p_compressed;
+		}
+	}
+
+	/**
+	 * Collects the progress of all files while loading.
+	 */
+	static class Progress {
+		/** After how many objects the listener gets informed. */
+		static final int INTERVAL = 1024;
+
+		private final DataLoadListener listener;
+		private final long totalBytes;
+		private final AtomicLong objects = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+
+		Progress(DataLoadListener p_listener, long p_totalBytes) {
+			this.listener = p_listener;
+			this.totalBytes = p_totalBytes;
+		}
+
+		/**
+		 * Counts objects and bytes read from one file and informs the listener.
+		 */
+		void read(int p_objects, long p_bytes) {
+			this.listener.progress(this.objects.addAndGet(p_objects), this.bytes.addAndGet(p_bytes), this.totalBytes);
+		}
+	}
+}
@@ -13,35 +13,193 @@
  */
 package de.c_hack.tim.lib.DataManager;
 
-import java.io.EOFException;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InterruptedIOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.management.JMException;
+
+import de.c_hack.tim.lib.Platform;
 
 /**
  * A generic data Handler. On construction it loads data from a given file.
  * Then you can read, set and remove data.
  * 
+ * With multiple files the location is a directory and the data is
+ * partitioned by the hash of the primary key into a fixed number of shard
+ * files. These are loaded and saved in parallel and only shards that changed
+ * are rewritten on save.
+ * 
+ * Files are never overwritten in place. They are written to a temporary file
+ * first, synced to disk and then renamed over the old file. With
+ * {@link #enableAsyncSaving(long, TimeUnit)} saving happens on a background
+ * thread instead of the thread changing the data.
+ * 
+ * The files can optionally be compressed. See {@link #setCompression(boolean)}.
+ * 
+ * With {@link #enableIncrementalSaving(int)} a save only writes a delta file
+ * with the objects that changed since the last save. Once there are too many
+ * delta files, they are folded into the data files in the background.
+ * 
+ * With {@link #enableOrderedKeys(Comparator)} the keys are kept sorted, which
+ * allows to read ranges of keys without scanning all data.
+ * 
+ * Other components can subscribe to all changes with
+ * {@link #subscribe(DataChangeListener, Executor, int, boolean)}.
+ * 
+ * Objects can expire after a time to live and the number of objects can be
+ * limited. See {@link #setData(DataObject, long, TimeUnit)} and
+ * {@link #setMaxEntries(int)}.
+ * 
+ * All objects handed in and out are copied, by default with
+ * {@link DataObject#clone()}. See {@link #setCopier(DataCopier)} for cheaper
+ * ways.
+ * 
+ * The handler collects metrics about its operations. See
+ * {@link #getMetrics()}.
+ * 
+ * All methods are thread safe.
+ * 
  * @author Tim Neumann
  * @param <I>
  *            The type of the primary ID
  * @param <T>
  *            The type of the data.
  */
-public class DataHandler<I, T extends DataObject<I>> {
+public class DataHandler<I, T extends DataObject<I>> implements Closeable {
 
 	private Class<T> theType;
-	private HashMap<I, T> dataMap = new HashMap<>();
+	private Map<I, T> dataMap = new HashMap<>();
+	/**
+	 * The comparator for the keys in ordered mode. null while not ordered.
+	 * (In ordered mode with natural ordering this is
+	 * {@link Comparator#naturalOrder()}.)
+	 */
+	private Comparator<? super I> keyOrder;
 	private File location;
 
 	/** Whether auto save every write action. */
 	private boolean autoSaving;
 
+	/** The number of shard files. 1 means the location is a single file. */
+	private int shardCount;
+	/** Which shards changed since they were last saved or loaded. */
+	private boolean[] dirtyShards;
+
+	/** Whether to write the compressed file format. */
+	private volatile boolean compression;
+
+	private final CopyOnWriteArrayList<DataSubscription<I, T>> subscriptions = new CopyOnWriteArrayList<>();
+	/** The sequence number of the last change. */
+	private long changeSequence;
+	/** The changes not handed to the subscriptions yet. */
+	private List<DataChangeEvent<I, T>> pendingChanges = new ArrayList<>();
+	/** Held while handing changes to the subscriptions, so that they stay in order. */
+	private final ReentrantLock publishLock = new ReentrantLock();
+
+	/** Whether saves write delta files. */
+	private boolean incremental;
+	/** The number of delta files after which they get folded into the data files. */
+	private int maxDeltas;
+	/**
+	 * The keys changed since the last save. Only tracked with incremental
+	 * saving or while there are delta files, otherwise null.
+	 */
+	private HashSet<I> dirtyKeys;
+	/**
+	 * Whether the next save must write the changed shards completely instead
+	 * of a delta. Set when incremental saving is turned on with unsaved
+	 * changes, as the keys removed before aren't known.
+	 */
+	private boolean fullSavePending;
+	/** The numbers of the existing delta files in ascending order. Guarded by the save lock. */
+	private TreeSet<Integer> deltaNumbers = new TreeSet<>();
+	/** Whether a background compaction is scheduled. Guarded by the save lock. */
+	private boolean compactionScheduled;
+	/** The exception of the last failed background compaction. */
+	private volatile IOException compactionFailure;
+
+	/** Held while writing files, so that older snapshots never overwrite newer ones. */
+	private final Object saveLock = new Object();
+	/** The background saver or null, if async saving is off. */
+	private ScheduledExecutorService asyncSaver;
+	/** The minimum time between two background saves in nanoseconds. */
+	private long asyncSaveInterval;
+	/**
+	 * When the last background save started. (System.nanoTime()) Set to one
+	 * interval before enabling, when async saving is turned on.
+	 */
+	private long lastAsyncSave;
+	/** The future of the next scheduled background save or null, if none is scheduled. */
+	private CompletableFuture<Void> pendingAsyncSave;
+
+	/** The length of one tick of the expiry sweeper in milliseconds. */
+	static final long EXPIRY_TICK_MILLIS = 100;
+	/** The number of slots of the expiry timer wheel. */
+	private static final int EXPIRY_SLOTS = 512;
+	/** The time to live of objects set without one in nanoseconds. 0 for none. */
+	private long defaultTimeToLive;
+	/**
+	 * Removes expired objects of all handlers. The sweeps only hold weak
+	 * references to the handlers, so a handler doesn't need to be closed to
+	 * be garbage collected.
+	 */
+	private static final ScheduledExecutorService EXPIRY_SWEEPER = Executors.newSingleThreadScheduledExecutor(Platform.backgroundThreads("DataHandler expiry"));
+	/**
+	 * Publishes the objects removed by the {@link #EXPIRY_SWEEPER}. Publishing
+	 * waits while a subscription's buffer is full, which must neither hold up
+	 * the sweeps of other handlers nor the next sweep of the same handler.
+	 */
+	private static final ExecutorService EXPIRY_PUBLISHER = Executors.newCachedThreadPool(Platform.taskThreads("DataHandler expiry publisher"));
+	/** Whether the removals of a sweep are waiting for the {@link #EXPIRY_PUBLISHER}. */
+	private final AtomicBoolean sweepPublishQueued = new AtomicBoolean();
+	/** The expiry deadlines or null, if no object had a time to live yet. */
+	private TimerWheel<I> expiryWheel;
+	/** The maximum number of objects. 0 for no limit. */
+	private int maxEntries;
+	/** The keys from least to most recently used, while the number of objects is limited. Otherwise null. */
+	private LinkedHashMap<I, Boolean> accessOrder;
+
+	private final DataMetrics metrics = new DataMetrics(weakSize(this));
+
+	/** Copies the objects handed in and out. */
+	private volatile DataCopier<T> copier = DataCopier.cloning();
+	/** Whether the copier returned an object of the right class yet. */
+	private volatile boolean copierVerified;
+
 	/**
 	 * Creates a new standard DataHandler. (With auto saving and multiple files
 	 * off.)
@@ -74,11 +232,40 @@ public class DataHandler<I, T extends DataObject<I>> {
 	 *             When there is a problem with the file location
 	 */
 	public DataHandler(Class<T> p_theDataType, File p_location, boolean p_autoSaving) throws NullPointerException, IOException {
+		this(p_theDataType, p_location, p_autoSaving, 1);
+	}
+
+	/**
+	 * Creates a new DataHandler, that uses multiple files.
+	 * 
+	 * @param p_theDataType
+	 *            The data type (class) this Data Handler is for.
+	 * @param p_location
+	 *            The file location of this Data Handler. If more than one shard
+	 *            is used, this is the directory containing the shard files.
+	 * @param p_autoSaving
+	 *            Whether to automatically save on write.
+	 * @param p_shardCount
+	 *            The number of files to partition the data into. The same
+	 *            number must be used every time the data is loaded.
+	 * @throws NullPointerException
+	 *             When a parameter is null
+	 * @throws IOException
+	 *             When there is a problem with the file location
+	 */
+	public DataHandler(Class<T> p_theDataType, File p_location, boolean p_autoSaving, int p_shardCount) throws NullPointerException, IOException {
 		if (p_theDataType == null || p_location == null) throw new NullPointerException();
+		if (p_shardCount < 1) throw new IllegalArgumentException("There must be at least one shard.");
 		this.theType = p_theDataType;
 		this.location = p_location;
 		this.autoSaving = p_autoSaving;
+		this.shardCount = p_shardCount;
+		this.dirtyShards = new boolean[p_shardCount];
 		this.checkDataFile();
+		this.deltaNumbers = findDeltas();
+		if (!this.deltaNumbers.isEmpty()) {
+			this.dirtyKeys = new HashSet<>();
+		}
 	}
 
 	/**
@@ -89,12 +276,21 @@ public class DataHandler<I, T extends DataObject<I>> {
 	 *             When a object in the DataHandler can't be cloned safely.
 	 */
 	public HashMap<I, T> getAllData() throws ClassCastException {
-		HashMap<I, T> ret = new HashMap<>();
+		HashMap<I, T> ret;
+		synchronized (this) {
+			ret = new HashMap<>((int) (this.dataMap.size() / 0.75f) + 1);
+			long now = System.nanoTime();
 
-		for (Entry<I, T> e : this.dataMap.entrySet()) {
-			ret.put(e.getKey(), cloneData(e.getValue()));
+			for (Entry<I, T> e : this.dataMap.entrySet()) {
+				if (this.expiryWheel != null && this.expiryWheel.isExpired(e.getKey(), now)) {
+					continue;
+				}
+				ret.put(e.getKey(), e.getValue());
+			}
 		}
 
+		//The stored objects are never changed, only replaced. So they can be copied without the lock.
+		ret.replaceAll((key, value) -> copyData(value));
 		return ret;
 	}
 
@@ -108,7 +304,269 @@ public class DataHandler<I, T extends DataObject<I>> {
 	 *             When the retrieved object can't be cloned safely.
 	 */
 	public T getData(I primaryKey) throws ClassCastException {
-		return cloneData(this.dataMap.get(primaryKey));
+		long start = DataMetrics.start();
+		try {
+			T stored;
+			synchronized (this) {
+				if (this.expiryWheel != null && this.expiryWheel.isExpired(primaryKey, System.nanoTime())) return null;
+				if (this.accessOrder != null) {
+					this.accessOrder.get(primaryKey);
+				}
+				stored = this.dataMap.get(primaryKey);
+			}
+			return copyData(stored);
+		} finally {
+			this.metrics.get(start);
+		}
+	}
+
+	/**
+	 * @return The number of data objects.
+	 */
+	public synchronized int size() {
+		return this.dataMap.size();
+	}
+
+	/**
+	 * Set's the copier used to copy the data objects that are handed in and
+	 * out of this handler. By default they are copied with
+	 * {@link DataObject#clone()}.
+	 * 
+	 * If there is data already, the copier is tried on one object right away.
+	 * Otherwise this is done on the first copy.
+	 * 
+	 * @param p_copier
+	 *            The copier to use. E.g. {@link DataCopier#identity()} for
+	 *            immutable types.
+	 * @throws NullPointerException
+	 *             When the copier is null.
+	 * @throws ClassCastException
+	 *             When the copier returns an object of another class.
+	 */
+	public synchronized void setCopier(DataCopier<T> p_copier) throws NullPointerException, ClassCastException {
+		if (p_copier == null) throw new NullPointerException("The copier can't be null.");
+		DataCopier<T> oldCopier = this.copier;
+		boolean oldVerified = this.copierVerified;
+		this.copier = p_copier;
+		this.copierVerified = false;
+		if (!this.dataMap.isEmpty()) {
+			try {
+				copyData(this.dataMap.values().iterator().next());
+			} catch (RuntimeException e) {
+				this.copier = oldCopier;
+				this.copierVerified = oldVerified;
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Set's the time to live for objects set without one from now on. This
+	 * doesn't change the objects already in this handler.
+	 * 
+	 * @param p_timeToLive
+	 *            The time after which objects are removed. 0 for never.
+	 * @param p_unit
+	 *            The unit of the time.
+	 * @throws IllegalArgumentException
+	 *             When the time is negative.
+	 */
+	public synchronized void setDefaultTimeToLive(long p_timeToLive, TimeUnit p_unit) throws IllegalArgumentException {
+		if (p_timeToLive < 0) throw new IllegalArgumentException("The time to live can't be negative.");
+		this.defaultTimeToLive = p_unit.toNanos(p_timeToLive);
+	}
+
+	/**
+	 * Limits the number of objects in this handler. When a new object would
+	 * exceed the limit, the least recently used object is removed. Objects
+	 * are used by setting them and by {@link #getData(Object)}.
+	 * 
+	 * Like expired objects, removed objects are only removed from the files
+	 * with the next save. With incremental saving that is a delta file.
+	 * 
+	 * @param p_maxEntries
+	 *            The maximum number of objects. 0 for no limit.
+	 * @throws IllegalArgumentException
+	 *             When the number is negative.
+	 * @throws InterruptedIOException
+	 *             When interrupted while handing the removed objects to the
+	 *             subscriptions.
+	 */
+	public void setMaxEntries(int p_maxEntries) throws IllegalArgumentException, InterruptedIOException {
+		if (p_maxEntries < 0) throw new IllegalArgumentException("The maximum number of objects can't be negative.");
+		synchronized (this) {
+			this.maxEntries = p_maxEntries;
+			if (p_maxEntries == 0) {
+				this.accessOrder = null;
+				return;
+			}
+			if (this.accessOrder == null) {
+				this.accessOrder = new LinkedHashMap<>(16, 0.75f, true);
+				for (I key : this.dataMap.keySet()) {
+					this.accessOrder.put(key, Boolean.TRUE);
+				}
+			}
+			evictOverflow();
+		}
+		removedInBackground();
+	}
+
+	/**
+	 * Get's the metrics of this data handler. They can also be published
+	 * through JMX with {@link DataMetrics#register(String)}. The registration
+	 * doesn't keep this handler from being garbage collected, but it stays
+	 * until {@link #close()}.
+	 * 
+	 * @return The metrics.
+	 */
+	public DataMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * @return Counts the objects of the given handler for its metrics. Only
+	 *         weakly references the handler, as registered metrics are
+	 *         referenced by the MBean server.
+	 */
+	private static LongSupplier weakSize(DataHandler<?, ?> handler) {
+		WeakReference<DataHandler<?, ?>> ref = new WeakReference<>(handler);
+		return () -> {
+			DataHandler<?, ?> h = ref.get();
+			return h != null ? h.size() : 0;
+		};
+	}
+
+	/**
+	 * Subscribes to the changes of this data handler. The given listener gets
+	 * informed of all data objects put into this handler by
+	 * {@link #setData(DataObject)}, {@link #batch(Consumer)} or
+	 * {@link #loadData()} and all removed keys. Every event carries its own
+	 * copy of the data object.
+	 * 
+	 * See {@link DataSubscription} for how the events are delivered.
+	 * 
+	 * @param p_listener
+	 *            The listener to inform.
+	 * @param p_executor
+	 *            The executor to call the listener on.
+	 * @param p_bufferSize
+	 *            The number of changes to buffer before changing threads have
+	 *            to wait.
+	 * @param p_replayExisting
+	 *            Whether to first deliver a PUT event for every data object
+	 *            already in this handler.
+	 * @return The subscription.
+	 */
+	public DataSubscription<I, T> subscribe(DataChangeListener<I, T> p_listener, Executor p_executor, int p_bufferSize, boolean p_replayExisting) {
+		if (p_listener == null || p_executor == null) throw new NullPointerException();
+		DataSubscription<I, T> subscription;
+		synchronized (this) {
+			List<Entry<I, T>> replay = null;
+			if (p_replayExisting) {
+				//The stored objects are never modified, so references are a valid snapshot.
+				replay = new ArrayList<>(this.dataMap.size());
+				for (Entry<I, T> e : this.dataMap.entrySet()) {
+					replay.add(new AbstractMap.SimpleImmutableEntry<>(e.getKey(), e.getValue()));
+				}
+			}
+			subscription = new DataSubscription<>(this, p_listener, p_executor, p_bufferSize, this::copyData, this.changeSequence, replay);
+			this.subscriptions.add(subscription);
+		}
+		if (p_replayExisting) {
+			subscription.schedule();
+		}
+		return subscription;
+	}
+
+	/**
+	 * Removes a subscription.
+	 */
+	void unsubscribe(DataSubscription<I, T> subscription) {
+		this.subscriptions.remove(subscription);
+	}
+
+	/**
+	 * Keeps the keys sorted from now on. This is needed for
+	 * {@link #range(Object, Object)}, {@link #head(Object)},
+	 * {@link #tail(Object)} and {@link #page(Object, int)}.
+	 * 
+	 * @param p_comparator
+	 *            The order of the keys or null to use their natural ordering.
+	 *            (Then they must be {@link Comparable}.)
+	 * @throws ClassCastException
+	 *             If the existing keys can't be compared.
+	 */
+	public synchronized void enableOrderedKeys(Comparator<? super I> p_comparator) throws ClassCastException {
+		@SuppressWarnings("unchecked")
+		Comparator<? super I> order = p_comparator != null ? p_comparator : (Comparator<? super I>) Comparator.naturalOrder();
+		ConcurrentSkipListMap<I, T> newMap = new ConcurrentSkipListMap<>(order);
+		newMap.putAll(this.dataMap);
+		this.dataMap = newMap;
+		this.keyOrder = order;
+	}
+
+	/**
+	 * Streams the data objects with keys from (inclusive) to (exclusive) in
+	 * key order. The objects are cloned one by one while the stream is
+	 * consumed. Changes made while streaming may or may not be seen.
+	 * 
+	 * @param p_from
+	 *            The lowest key to include.
+	 * @param p_to
+	 *            The first key not to include.
+	 * @return The data objects in the range.
+	 * @throws IllegalStateException
+	 *             If the keys are not ordered.
+	 */
+	public Stream<T> range(I p_from, I p_to) throws IllegalStateException {
+		return stream(orderedMap().subMap(p_from, true, p_to, false));
+	}
+
+	/**
+	 * Streams the data objects with keys lower than the given one in key
+	 * order. See {@link #range(Object, Object)}.
+	 * 
+	 * @param p_to
+	 *            The first key not to include.
+	 * @return The data objects before the key.
+	 * @throws IllegalStateException
+	 *             If the keys are not ordered.
+	 */
+	public Stream<T> head(I p_to) throws IllegalStateException {
+		return stream(orderedMap().headMap(p_to, false));
+	}
+
+	/**
+	 * Streams the data objects with keys from the given one on in key order.
+	 * See {@link #range(Object, Object)}.
+	 * 
+	 * @param p_from
+	 *            The lowest key to include.
+	 * @return The data objects from the key on.
+	 * @throws IllegalStateException
+	 *             If the keys are not ordered.
+	 */
+	public Stream<T> tail(I p_from) throws IllegalStateException {
+		return stream(orderedMap().tailMap(p_from, true));
+	}
+
+	/**
+	 * Reads one page of data objects in key order. To get the next page pass
+	 * the key of the last object of this page as cursor.
+	 * 
+	 * @param p_after
+	 *            The cursor. Only keys greater than this are returned. null
+	 *            to start with the first key.
+	 * @param p_limit
+	 *            The maximum number of objects to return.
+	 * @return The data objects. If this has less than limit elements, it is
+	 *         the last page.
+	 * @throws IllegalStateException
+	 *             If the keys are not ordered.
+	 */
+	public List<T> page(I p_after, int p_limit) throws IllegalStateException {
+		NavigableMap<I, T> map = orderedMap();
+		return stream(p_after == null ? map : map.tailMap(p_after, false)).limit(p_limit).collect(Collectors.toList());
 	}
 
 	/**
@@ -125,10 +583,57 @@ public class DataHandler<I, T extends DataObject<I>> {
 	 *             When saving fails.
 	 */
 	public void setData(T obj) throws ClassCastException, NullPointerException, IOException {
+		putData(obj, -1);
+	}
+
+	/**
+	 * Adds a new data object or replaces a old one if the primaryKey already
+	 * exists. The object is removed after the given time.
+	 * 
+	 * The time to live is not saved. After loading all objects get the
+	 * default time to live. (See {@link #setDefaultTimeToLive(long, TimeUnit)})
+	 * 
+	 * @param obj
+	 *            The data object to set.
+	 * @param p_timeToLive
+	 *            The time after which the object is removed. 0 for never.
+	 * @param p_unit
+	 *            The unit of the time.
+	 * @throws ClassCastException
+	 *             When the given object can't be cloned safely.
+	 * @throws NullPointerException
+	 *             When the object is null.
+	 * @throws IllegalArgumentException
+	 *             When the time is negative.
+	 * @throws IOException
+	 *             When saving fails.
+	 */
+	public void setData(T obj, long p_timeToLive, TimeUnit p_unit) throws ClassCastException, NullPointerException, IllegalArgumentException, IOException {
+		if (p_timeToLive < 0) throw new IllegalArgumentException("The time to live can't be negative.");
+		putData(obj, p_unit.toNanos(p_timeToLive));
+	}
+
+	/**
+	 * Does the work of the public setData methods.
+	 * 
+	 * @param p_timeToLive
+	 *            The time to live in nanoseconds or -1 for the default.
+	 */
+	private void putData(T obj, long p_timeToLive) throws ClassCastException, NullPointerException, IOException {
 		if (obj == null) throw new NullPointerException("Can't set data, because the given object is null.");
-		this.dataMap.put(obj.getPrimaryID(), cloneData(obj));
-		if (this.autoSaving) {
-			saveData();
+		long start = DataMetrics.start();
+		T clone = cloneData(obj);
+		synchronized (this) {
+			this.dataMap.put(clone.getPrimaryID(), clone);
+			markDirty(clone.getPrimaryID());
+			recordChange(DataChangeEvent.Type.PUT, clone.getPrimaryID(), clone);
+			track(clone.getPrimaryID(), p_timeToLive < 0 ? this.defaultTimeToLive : p_timeToLive);
+			evictOverflow();
+		}
+		try {
+			changed();
+		} finally {
+			this.metrics.set(start, 1);
 		}
 	}
 
@@ -142,31 +647,279 @@ public class DataHandler<I, T extends DataObject<I>> {
 	 * 
 	 */
 	public void removeData(I primaryKey) throws IOException {
-		this.dataMap.remove(primaryKey);
-		if (this.autoSaving) {
-			saveData();
+		long start = DataMetrics.start();
+		synchronized (this) {
+			if (this.dataMap.remove(primaryKey) != null) {
+				recordChange(DataChangeEvent.Type.REMOVE, primaryKey, null);
+			}
+			markDirty(primaryKey);
+			untrack(primaryKey);
+		}
+		try {
+			changed();
+		} finally {
+			this.metrics.remove(start, 1);
 		}
 	}
 
 	/**
-	 * Saves the data of this DataHandler
+	 * Adds or replaces all given data objects. Either all or none of the
+	 * objects are set and the data is saved only once.
+	 * 
+	 * @param p_objects
+	 *            The data objects to set.
+	 * @throws ClassCastException
+	 *             When one of the given objects can't be cloned safely.
+	 * @throws NullPointerException
+	 *             When one of the objects is null.
+	 * @throws IOException
+	 *             When saving fails.
+	 */
+	public void setAll(Collection<? extends T> p_objects) throws ClassCastException, NullPointerException, IOException {
+		batch(b -> {
+			for (T obj : p_objects) {
+				b.set(obj);
+			}
+		});
+	}
+
+	/**
+	 * Removes all data objects with the given keys. The data is saved only
+	 * once.
+	 * 
+	 * @param p_primaryKeys
+	 *            The keys of the data objects to remove.
+	 * @throws IOException
+	 *             When saving fails.
+	 */
+	public void removeAll(Collection<? extends I> p_primaryKeys) throws IOException {
+		batch(b -> {
+			for (I key : p_primaryKeys) {
+				b.remove(key);
+			}
+		});
+	}
+
+	/**
+	 * Applies a group of changes at once. The given consumer records the
+	 * changes on a {@link Batch}. They are only applied after the consumer
+	 * returned successfully and then saved once, if auto saving is on.
+	 * If the consumer throws an exception (e.g. because a object can't be
+	 * cloned safely), none of the changes are applied.
+	 * 
+	 * @param p_changes
+	 *            The consumer recording the changes.
+	 * @throws IOException
+	 *             When saving fails.
+	 */
+	public void batch(Consumer<Batch> p_changes) throws IOException {
+		Batch b = new Batch();
+		p_changes.accept(b);
+		b.closed = true;
+		if (b.changes.isEmpty()) return;
+
+		int removes = 0;
+		synchronized (this) {
+			for (Entry<I, T> change : b.changes.entrySet()) {
+				if (change.getValue() == null) {
+					removes++;
+					if (this.dataMap.remove(change.getKey()) != null) {
+						recordChange(DataChangeEvent.Type.REMOVE, change.getKey(), null);
+					}
+					untrack(change.getKey());
+				}
+				else {
+					this.dataMap.put(change.getKey(), change.getValue());
+					recordChange(DataChangeEvent.Type.PUT, change.getKey(), change.getValue());
+					track(change.getKey(), this.defaultTimeToLive);
+				}
+				markDirty(change.getKey());
+			}
+			evictOverflow();
+		}
+		this.metrics.set(DataMetrics.NOT_SAMPLED, b.changes.size() - removes);
+		this.metrics.remove(DataMetrics.NOT_SAMPLED, removes);
+		changed();
+	}
+
+	/**
+	 * Saves the data of this DataHandler. With multiple files only the shards
+	 * that changed are written. With incremental saving only a delta file with
+	 * the changed objects is written.
 	 * 
 	 * @throws IOException
 	 *             If something goes wrong with the IO.
 	 */
 	public void saveData() throws IOException {
-		//To save potential exceptions so we can throw them again after Stream is closed.
-		IOException savedE = null;
+		synchronized (this.saveLock) {
+			SavePlan plan;
+			synchronized (this) {
+				plan = planSave(this.shardCount == 1, false);
+			}
+			executeSave(plan);
+		}
+		IOException failure = this.compactionFailure;
+		if (failure != null) {
+			this.compactionFailure = null;
+			throw new IOException("The last background compaction failed.", failure);
+		}
+	}
 
-		try (ObjectOutputStream oUS = new ObjectOutputStream(new FileOutputStream(this.location))) {
-			for (T obj : this.dataMap.values()) {
-				oUS.writeObject(obj);
+	/**
+	 * Turns on incremental saving. Afterwards a save only writes the objects
+	 * that changed and the keys that were removed since the last save into a
+	 * new delta file. {@link #loadData()} applies the delta files on top of
+	 * the data files. When there are more than the given number of delta
+	 * files, they are folded into the data files in the background.
+	 * 
+	 * If there are unsaved changes when this is turned on, the next save still
+	 * writes the changed data files completely.
+	 * 
+	 * @param p_maxDeltas
+	 *            The number of delta files to allow before compacting.
+	 */
+	public synchronized void enableIncrementalSaving(int p_maxDeltas) {
+		if (p_maxDeltas < 1) throw new IllegalArgumentException("At least one delta file must be allowed.");
+		this.maxDeltas = p_maxDeltas;
+		if (!this.incremental) {
+			this.incremental = true;
+			if (this.dirtyKeys == null) {
+				this.dirtyKeys = new HashSet<>();
+				//Removed keys aren't tracked without incremental saving, so unsaved changes need a full save.
+				for (boolean shardDirty : this.dirtyShards) {
+					this.fullSavePending |= shardDirty;
+				}
 			}
+		}
+	}
+
+	/**
+	 * Folds all delta files into the data files. This rewrites all data
+	 * files.
+	 * 
+	 * @throws IOException
+	 *             If something goes wrong with the IO.
+	 */
+	public void compactData() throws IOException {
+		synchronized (this.saveLock) {
+			SavePlan plan;
+			synchronized (this) {
+				plan = planSave(true, true);
+			}
+			executeSave(plan);
+		}
+	}
+
+	/**
+	 * Set's whether the data files are compressed. This takes effect the next
+	 * time a file is written. Compressed and uncompressed files can always be
+	 * loaded.
+	 * 
+	 * Compressed files consist of independent blocks, which are compressed
+	 * and decompressed in parallel.
+	 * 
+	 * @param p_compression
+	 *            Whether to compress the data files.
+	 */
+	public void setCompression(boolean p_compression) {
+		this.compression = p_compression;
+	}
+
+	/**
+	 * Turns on saving in the background. Afterwards every change schedules a
+	 * save on a background thread instead of saving directly. (Regardless of
+	 * auto saving.) Multiple changes within the given interval are written
+	 * with a single save.
+	 * 
+	 * Use {@link #saveDataAsync()} to wait until changes are on disk and
+	 * {@link #close()} to write the last changes and stop the background
+	 * thread.
+	 * 
+	 * @param p_interval
+	 *            The minimum time between two saves.
+	 * @param p_unit
+	 *            The unit of the interval.
+	 */
+	public synchronized void enableAsyncSaving(long p_interval, TimeUnit p_unit) {
+		if (p_interval < 0) throw new IllegalArgumentException("The interval can't be negative.");
+		this.asyncSaveInterval = p_unit.toNanos(p_interval);
+		if (this.asyncSaver == null) {
+			this.asyncSaver = Executors.newSingleThreadScheduledExecutor(Platform.backgroundThreads("DataHandler saver for " + this.location.getName()));
+			//nanoTime has no fixed origin, so the first save may run right away.
+			this.lastAsyncSave = System.nanoTime() - this.asyncSaveInterval;
+		}
+	}
+
+	/**
+	 * Saves the data in the background. Without async saving the data is
+	 * saved directly.
+	 * 
+	 * @return A future, that completes when all changes made before this call
+	 *         are saved to disk.
+	 */
+	public CompletableFuture<Void> saveDataAsync() {
+		synchronized (this) {
+			if (this.asyncSaver != null) return scheduleAsyncSave();
+		}
+		CompletableFuture<Void> ret = new CompletableFuture<>();
+		try {
+			saveData();
+			ret.complete(null);
 		} catch (IOException e) {
-			savedE = e;
+			ret.completeExceptionally(e);
 		}
-		if (savedE != null) throw savedE;
+		return ret;
+	}
+
+	/**
+	 * Stops async saving. If there are changes, that are not saved yet, they
+	 * are saved before this returns. Also stops removing expired objects and
+	 * unregisters the metrics. (Without async saving, closing is optional. An
+	 * unused handler is garbage collected anyway, but registered metrics stay
+	 * until they are unregistered.)
+	 * 
+	 * @throws IOException
+	 *             If saving the last changes fails.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			this.metrics.unregister();
+		} catch (JMException e) {
+			throw new IOException("Can't unregister the metrics.", e);
+		}
+
+		ScheduledExecutorService saver;
+		boolean dirty = false;
+		synchronized (this) {
+			saver = this.asyncSaver;
+			this.asyncSaver = null;
+			//Ends the expiry sweeps.
+			this.expiryWheel = null;
+		}
+		if (saver == null) return;
 
+		//Already scheduled saves still run after shutdown.
+		saver.shutdown();
+		try {
+			saver.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the background saver.");
+		}
+		synchronized (this) {
+			if (this.dirtyKeys != null && this.incremental && !this.fullSavePending) {
+				dirty = !this.dirtyKeys.isEmpty();
+			}
+			else {
+				for (boolean shardDirty : this.dirtyShards) {
+					dirty |= shardDirty;
+				}
+			}
+		}
+		if (dirty) {
+			saveData();
+		}
 	}
 
 	/**
@@ -181,26 +934,576 @@ public class DataHandler<I, T extends DataObject<I>> {
 	 *             project.
 	 */
 	public void loadData() throws IOException, WrongObjectException, ClassNotFoundException {
-		IOException savedIOE = null;
-		ClassCastException savedWOE = null;
-		ClassNotFoundException savedCNFE = null;
-		this.dataMap = new HashMap<>();
-		try (ObjectInputStream oIS = new ObjectInputStream(new FileInputStream(this.location))) {
-			while (true) {
-				loadSingleDataObject(oIS.readObject());
-			}
-		} catch (EOFException e) {
-			//Ignore. Just the way to know when done reading the file.(Yes this is weird.)
-		} catch (IOException e) {
-			savedIOE = e;
-		} catch (WrongObjectException e) {
-			savedWOE = e;
-		} catch (ClassNotFoundException e) {
-			savedCNFE = e;
+		loadData(null);
+	}
+
+	/**
+	 * Loads the data of the file system and reports the progress to the given
+	 * listener.
+	 * 
+	 * The deserialized objects are put into the data handler directly. They
+	 * are neither cloned nor does loading trigger auto saving.
+	 * 
+	 * @param p_listener
+	 *            The listener to inform about the progress or null.
+	 * @throws IOException
+	 *             If something goes wrong with the IO.
+	 * @throws WrongObjectException
+	 *             If the file contains an object that is the wrong type.
+	 * @throws ClassNotFoundException
+	 *             If the class of an object in the file is not defined in this
+	 *             project.
+	 */
+	public void loadData(DataLoadListener p_listener) throws IOException, WrongObjectException, ClassNotFoundException {
+		synchronized (this.saveLock) {
+			synchronized (this) {
+				loadDataLocked(p_listener);
+			}
+		}
+		publishChanges();
+	}
+
+	/**
+	 * Does the work of {@link #loadData(DataLoadListener)}. Must be called
+	 * while holding the save lock and the lock of this handler.
+	 */
+	private void loadDataLocked(DataLoadListener p_listener) throws IOException, ClassNotFoundException {
+		long start = System.nanoTime();
+		long totalBytes = 0;
+		for (int i = 0; i < this.shardCount; i++) {
+			totalBytes += this.shardCount == 1 ? this.location.length() : shardFile(i).length();
+		}
+		DataFiles.Progress progress = null;
+		if (p_listener != null) {
+			progress = new DataFiles.Progress(p_listener, totalBytes);
+		}
+
+		List<List<T>> shards = new ArrayList<>(this.shardCount);
+		if (this.shardCount == 1) {
+			shards.add(DataFiles.read(this.location, this.theType, progress));
+		}
+		else {
+			final DataFiles.Progress shardProgress = progress;
+			List<ForkJoinTask<List<T>>> tasks = new ArrayList<>(this.shardCount);
+			for (int i = 0; i < this.shardCount; i++) {
+				File shardFile = shardFile(i);
+				tasks.add(ForkJoinPool.commonPool().submit((Callable<List<T>>) () -> shardFile.exists() ? DataFiles.read(shardFile, this.theType, shardProgress) : new ArrayList<>()));
+			}
+			for (ForkJoinTask<List<T>> task : tasks) {
+				shards.add(DataFiles.join(task));
+			}
+		}
+
+		int count = 0;
+		for (List<T> shard : shards) {
+			count += shard.size();
+		}
+		Map<I, T> newMap = this.keyOrder != null ? new ConcurrentSkipListMap<>(this.keyOrder) : new HashMap<>((int) (count / 0.75f) + 1);
+		boolean[] newDirtyShards = new boolean[this.shardCount];
+		for (int i = 0; i < this.shardCount; i++) {
+			for (T obj : shards.get(i)) {
+				I key = obj.getPrimaryID();
+				newMap.put(key, obj);
+				//Objects that are in the wrong shard (e.g. because the key's hash code changed) get moved on the next save.
+				int correctShard = shardOf(key);
+				if (correctShard != i) {
+					newDirtyShards[i] = true;
+					newDirtyShards[correctShard] = true;
+				}
+			}
+		}
+
+		//Apply the deltas in order on top of the data files.
+		this.deltaNumbers = findDeltas();
+		for (Integer number : this.deltaNumbers) {
+			totalBytes += deltaFile(number.intValue()).length();
+			for (Object obj : DataFiles.readDelta(deltaFile(number.intValue()), this.theType)) {
+				if (obj instanceof DataFiles.Removal) {
+					@SuppressWarnings("unchecked")
+					I key = (I) ((DataFiles.Removal) obj).getKey();
+					newMap.remove(key);
+				}
+				else {
+					@SuppressWarnings("unchecked")
+					T objT = (T) obj;
+					newMap.put(objT.getPrimaryID(), objT);
+				}
+			}
+		}
+
+		if (!this.subscriptions.isEmpty()) {
+			for (I key : this.dataMap.keySet()) {
+				if (!newMap.containsKey(key)) {
+					recordChange(DataChangeEvent.Type.REMOVE, key, null);
+				}
+			}
+			for (Entry<I, T> e : newMap.entrySet()) {
+				recordChange(DataChangeEvent.Type.PUT, e.getKey(), e.getValue());
+			}
+		}
+		this.dataMap = newMap;
+		this.dirtyShards = newDirtyShards;
+		this.dirtyKeys = this.incremental || !this.deltaNumbers.isEmpty() ? new HashSet<>() : null;
+
+		if (this.expiryWheel != null) {
+			this.expiryWheel.clear();
+		}
+		if (this.accessOrder != null) {
+			this.accessOrder.clear();
+		}
+		for (I key : newMap.keySet()) {
+			track(key, this.defaultTimeToLive);
+		}
+		evictOverflow();
+		this.metrics.loaded(System.nanoTime() - start, totalBytes, newMap.size());
+	}
+
+	/**
+	 * Saves after a change, if auto saving or async saving is on.
+	 */
+	private void changed() throws IOException {
+		publishChanges();
+		synchronized (this) {
+			if (this.asyncSaver != null) {
+				scheduleAsyncSave();
+				return;
+			}
+		}
+		if (this.autoSaving) {
+			saveData();
+		}
+	}
+
+	/**
+	 * Schedules a background save, if none is scheduled yet.
+	 * 
+	 * @return The future of the scheduled save.
+	 */
+	private synchronized CompletableFuture<Void> scheduleAsyncSave() {
+		if (this.pendingAsyncSave == null) {
+			this.pendingAsyncSave = new CompletableFuture<>();
+			long delay = Math.max(0, this.lastAsyncSave + this.asyncSaveInterval - System.nanoTime());
+			this.asyncSaver.schedule(this::runAsyncSave, delay, TimeUnit.NANOSECONDS);
 		}
-		if (savedIOE != null) throw savedIOE;
-		if (savedWOE != null) throw savedWOE;
-		if (savedCNFE != null) throw savedCNFE;
+		return this.pendingAsyncSave;
+	}
+
+	/**
+	 * Run by the background saver.
+	 */
+	private void runAsyncSave() {
+		synchronized (this.saveLock) {
+			CompletableFuture<Void> future;
+			SavePlan plan;
+			synchronized (this) {
+				future = this.pendingAsyncSave;
+				this.pendingAsyncSave = null;
+				this.lastAsyncSave = System.nanoTime();
+				plan = planSave(false, false);
+			}
+			try {
+				executeSave(plan);
+				future.complete(null);
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * @return The data map as ordered map.
+	 * @throws IllegalStateException
+	 *             If the keys are not ordered.
+	 */
+	private synchronized NavigableMap<I, T> orderedMap() throws IllegalStateException {
+		if (this.keyOrder == null) throw new IllegalStateException("The keys are not ordered. Call enableOrderedKeys first.");
+		return (NavigableMap<I, T>) this.dataMap;
+	}
+
+	/**
+	 * @return A stream cloning the values of the given map lazily. Expired
+	 *         objects are skipped.
+	 */
+	private Stream<T> stream(NavigableMap<I, T> map) {
+		return map.entrySet().stream().filter(e -> !isExpired(e.getKey())).map(e -> copyData(e.getValue()));
+	}
+
+	/**
+	 * Records a change for the subscriptions, if there are any. Must be
+	 * called while holding the lock of this handler.
+	 * 
+	 * @param value
+	 *            The object as stored in this handler. (Copied for each
+	 *            subscription on delivery.)
+	 */
+	private void recordChange(DataChangeEvent.Type type, I key, T value) {
+		if (this.subscriptions.isEmpty()) return;
+		this.pendingChanges.add(new DataChangeEvent<>(type, ++this.changeSequence, key, value));
+	}
+
+	/**
+	 * Hands the recorded changes to the subscriptions. Must be called without
+	 * holding the lock of this handler, as it waits, if a subscription's
+	 * buffer is full.
+	 */
+	private void publishChanges() throws InterruptedIOException {
+		if (this.subscriptions.isEmpty()) return;
+		this.publishLock.lock();
+		try {
+			List<DataChangeEvent<I, T>> changes;
+			synchronized (this) {
+				if (this.pendingChanges.isEmpty()) return;
+				changes = this.pendingChanges;
+				this.pendingChanges = new ArrayList<>();
+			}
+			for (DataSubscription<I, T> subscription : this.subscriptions) {
+				for (DataChangeEvent<I, T> change : changes) {
+					subscription.offer(change);
+				}
+				subscription.schedule();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a subscription.");
+		} finally {
+			this.publishLock.unlock();
+		}
+	}
+
+	/**
+	 * Marks the given key as changed. Must be called while holding the lock
+	 * of this handler.
+	 */
+	private void markDirty(I primaryKey) {
+		this.dirtyShards[shardOf(primaryKey)] = true;
+		if (this.dirtyKeys != null) {
+			this.dirtyKeys.add(primaryKey);
+		}
+	}
+
+	/**
+	 * Updates the expiry and the access order for a set object. Must be called
+	 * while holding the lock of this handler.
+	 * 
+	 * @param timeToLive
+	 *            The time to live in nanoseconds. 0 for none.
+	 */
+	private void track(I primaryKey, long timeToLive) {
+		if (timeToLive > 0) {
+			if (this.expiryWheel == null) {
+				this.expiryWheel = new TimerWheel<>(TimeUnit.MILLISECONDS.toNanos(EXPIRY_TICK_MILLIS), EXPIRY_SLOTS, System.nanoTime());
+				new ExpirySweep(this, this.expiryWheel).schedule();
+			}
+			this.expiryWheel.schedule(primaryKey, System.nanoTime() + timeToLive);
+		}
+		else if (this.expiryWheel != null) {
+			this.expiryWheel.cancel(primaryKey);
+		}
+		if (this.accessOrder != null) {
+			this.accessOrder.put(primaryKey, Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * Forgets the expiry and the access order for a removed object. Must be
+	 * called while holding the lock of this handler.
+	 */
+	private void untrack(I primaryKey) {
+		if (this.expiryWheel != null) {
+			this.expiryWheel.cancel(primaryKey);
+		}
+		if (this.accessOrder != null) {
+			this.accessOrder.remove(primaryKey);
+		}
+	}
+
+	/**
+	 * Removes the least recently used objects while there are more than
+	 * allowed. Must be called while holding the lock of this handler.
+	 */
+	private void evictOverflow() {
+		if (this.accessOrder == null) return;
+		Iterator<I> it = this.accessOrder.keySet().iterator();
+		while (this.dataMap.size() > this.maxEntries && it.hasNext()) {
+			I key = it.next();
+			it.remove();
+			this.dataMap.remove(key);
+			if (this.expiryWheel != null) {
+				this.expiryWheel.cancel(key);
+			}
+			recordChange(DataChangeEvent.Type.REMOVE, key, null);
+			markDirty(key);
+		}
+	}
+
+	/**
+	 * Run by the expiry sweeper. Removes the objects whose time to live is
+	 * over.
+	 * 
+	 * @param wheel
+	 *            The timer wheel the sweep was started for.
+	 * @return Whether the sweep should continue, i.e. the wheel is still the
+	 *         current one.
+	 */
+	private boolean sweepExpired(TimerWheel<?> wheel) {
+		List<I> expired = new ArrayList<>();
+		synchronized (this) {
+			if (this.expiryWheel != wheel) return false;
+			this.expiryWheel.advance(System.nanoTime(), expired::add);
+			for (I key : expired) {
+				if (this.dataMap.remove(key) != null) {
+					recordChange(DataChangeEvent.Type.REMOVE, key, null);
+				}
+				markDirty(key);
+				if (this.accessOrder != null) {
+					this.accessOrder.remove(key);
+				}
+			}
+		}
+		if (!expired.isEmpty() && this.sweepPublishQueued.compareAndSet(false, true)) {
+			EXPIRY_PUBLISHER.execute(() -> {
+				this.sweepPublishQueued.set(false);
+				try {
+					removedInBackground();
+				} catch (InterruptedIOException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+		return true;
+	}
+
+	/**
+	 * @return Whether the object with the given key is expired, but not
+	 *         removed yet.
+	 */
+	private synchronized boolean isExpired(I primaryKey) {
+		return this.expiryWheel != null && this.expiryWheel.isExpired(primaryKey, System.nanoTime());
+	}
+
+	/**
+	 * Publishes objects removed by expiry or eviction. They are not saved
+	 * right away, even with auto saving, but only with the next save. With
+	 * async saving that is scheduled.
+	 */
+	private void removedInBackground() throws InterruptedIOException {
+		publishChanges();
+		synchronized (this) {
+			if (this.asyncSaver != null) {
+				scheduleAsyncSave();
+			}
+		}
+	}
+
+	/**
+	 * Decides what to write on a save and collects the data for it. Must be
+	 * called while holding the save lock and the lock of this handler.
+	 * 
+	 * @param all
+	 *            Whether to write all data files, even if they didn't change.
+	 * @param compact
+	 *            Whether to fold the delta files into the data files.
+	 * @return The plan.
+	 */
+	private SavePlan planSave(boolean all, boolean compact) {
+		SavePlan plan = new SavePlan();
+		boolean baseExists = this.shardCount > 1 || this.location.exists();
+		if (this.dirtyKeys == null || !baseExists || this.fullSavePending) {
+			plan.shards = takeSnapshot(all || !baseExists);
+			if (this.dirtyKeys != null) {
+				//The data files contain everything, so the next delta only needs the changes from now on.
+				plan.full = true;
+				this.fullSavePending = false;
+				this.dirtyKeys.clear();
+				//Older deltas applied on top of the new data files could revert newer changes.
+				plan.foldDeltas = !this.deltaNumbers.isEmpty();
+			}
+			return plan;
+		}
+
+		if (!this.dirtyKeys.isEmpty()) {
+			plan.deltaKeys = new ArrayList<>(this.dirtyKeys);
+			plan.delta = new ArrayList<>(plan.deltaKeys.size());
+			for (I key : plan.deltaKeys) {
+				T obj = this.dataMap.get(key);
+				plan.delta.add(obj != null ? obj : new DataFiles.Removal(key));
+			}
+			plan.deltaNumber = this.deltaNumbers.isEmpty() ? 1 : this.deltaNumbers.last().intValue() + 1;
+			this.dirtyKeys.clear();
+		}
+		//Without incremental saving, the deltas must go away on every full save.
+		if (compact || !this.incremental) {
+			//The data files are written with exactly the state after the last delta. So if the compaction is interrupted, applying the remaining deltas again is harmless.
+			plan.shards = takeSnapshot(true);
+			plan.foldDeltas = true;
+		}
+		return plan;
+	}
+
+	/**
+	 * Executes a plan created by {@link #planSave(boolean, boolean)}. Must be
+	 * called while holding the save lock.
+	 */
+	private void executeSave(SavePlan plan) throws IOException {
+		long start = System.nanoTime();
+		long bytes = 0;
+		long objects = 0;
+		if (plan.delta != null) {
+			try {
+				bytes += DataFiles.write(deltaFile(plan.deltaNumber), plan.delta, this.compression);
+				objects += plan.delta.size();
+			} catch (IOException | RuntimeException e) {
+				synchronized (this) {
+					this.dirtyKeys.addAll(plan.deltaKeys);
+				}
+				throw e;
+			}
+			this.deltaNumbers.add(Integer.valueOf(plan.deltaNumber));
+		}
+		if (plan.shards != null) {
+			try {
+				bytes += writeSnapshot(plan.shards);
+			} catch (IOException | RuntimeException e) {
+				if (plan.full) {
+					synchronized (this) {
+						this.fullSavePending = true;
+					}
+				}
+				throw e;
+			}
+			for (List<T> shard : plan.shards) {
+				objects += shard != null ? shard.size() : 0;
+			}
+		}
+		if (bytes > 0) {
+			this.metrics.saved(System.nanoTime() - start, bytes, objects);
+		}
+
+		if (plan.foldDeltas) {
+			//Delete the oldest first, so that the remaining ones are always the latest changes.
+			while (!this.deltaNumbers.isEmpty()) {
+				Files.deleteIfExists(deltaFile(this.deltaNumbers.first().intValue()).toPath());
+				this.deltaNumbers.pollFirst();
+			}
+			synchronized (this) {
+				if (!this.incremental) {
+					this.dirtyKeys = null;
+				}
+			}
+		}
+		else if (this.incremental && this.deltaNumbers.size() > this.maxDeltas && !this.compactionScheduled) {
+			this.compactionScheduled = true;
+			Runnable compaction = () -> {
+				try {
+					compactData();
+				} catch (IOException e) {
+					this.compactionFailure = e;
+				} finally {
+					synchronized (this.saveLock) {
+						this.compactionScheduled = false;
+					}
+				}
+			};
+			synchronized (this) {
+				if (this.asyncSaver != null) {
+					this.asyncSaver.execute(compaction);
+				}
+				else {
+					ForkJoinPool.commonPool().execute(compaction);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collects the objects of the shards to save and marks the shards as
+	 * saved. Must be called while holding the lock of this handler.
+	 * 
+	 * @param all
+	 *            Whether to include shards, that didn't change.
+	 * @return The objects per shard. null for shards, that don't need to be
+	 *         written.
+	 */
+	private List<List<T>> takeSnapshot(boolean all) {
+		List<List<T>> shards = new ArrayList<>(this.shardCount);
+		boolean any = false;
+		for (int i = 0; i < this.shardCount; i++) {
+			boolean write = all || this.dirtyShards[i];
+			shards.add(write ? new ArrayList<>() : null);
+			any |= write;
+			this.dirtyShards[i] = false;
+		}
+		if (!any) return shards;
+
+		if (this.shardCount == 1) {
+			shards.get(0).addAll(this.dataMap.values());
+			return shards;
+		}
+		for (Entry<I, T> e : this.dataMap.entrySet()) {
+			List<T> shard = shards.get(shardOf(e.getKey()));
+			if (shard != null) {
+				shard.add(e.getValue());
+			}
+		}
+		return shards;
+	}
+
+	/**
+	 * Writes the snapshot taken with {@link #takeSnapshot(boolean)}. Shards
+	 * that fail to write are marked as changed again. Must be called while
+	 * holding the save lock.
+	 * 
+	 * @return The number of bytes written.
+	 */
+	private long writeSnapshot(List<List<T>> shards) throws IOException {
+		boolean compressed = this.compression;
+		if (this.shardCount == 1) {
+			if (shards.get(0) == null) return 0;
+			try {
+				return DataFiles.write(this.location, shards.get(0), compressed);
+			} catch (IOException | RuntimeException e) {
+				synchronized (this) {
+					this.dirtyShards[0] = true;
+				}
+				throw e;
+			}
+		}
+
+		List<ForkJoinTask<Long>> tasks = new ArrayList<>();
+		for (int i = 0; i < this.shardCount; i++) {
+			if (shards.get(i) == null) {
+				continue;
+			}
+			final int shard = i;
+			tasks.add(ForkJoinPool.commonPool().submit(() -> {
+				try {
+					return Long.valueOf(DataFiles.write(shardFile(shard), shards.get(shard), compressed));
+				} catch (IOException | RuntimeException e) {
+					synchronized (this) {
+						this.dirtyShards[shard] = true;
+					}
+					throw e;
+				}
+			}));
+		}
+		//Wait for all tasks, but throw the first exception.
+		IOException savedE = null;
+		long bytes = 0;
+		for (ForkJoinTask<Long> task : tasks) {
+			try {
+				bytes += DataFiles.join(task).longValue();
+			} catch (IOException e) {
+				if (savedE == null) {
+					savedE = e;
+				}
+			} catch (ClassNotFoundException e) {
+				if (savedE == null) {
+					savedE = new IOException(e);
+				}
+			}
+		}
+		if (savedE != null) throw savedE;
+		return bytes;
 	}
 
 	/**
@@ -214,12 +1517,32 @@ public class DataHandler<I, T extends DataObject<I>> {
 	 * @return A clone of the original object.
 	 */
 	private T cloneData(T toClone) throws ClassCastException {
-		if (!toClone.getClass().equals(this.theType)) throw new ClassCastException("Can't process data, because the given object is not of the specific type this handler is configuered for. (Was " + toClone.getClass().getName() + ". Should be " + this.theType.getName());
-		DataObject<I> clone = toClone.clone();
-		if (!clone.getClass().equals(toClone.getClass())) throw new ClassCastException("The class " + toClone.getClass().getName() + " doesn't return an object of the same class when cloned!");
-		@SuppressWarnings("unchecked")
-		T cloneT = (T) clone;
-		return cloneT;
+		if (toClone.getClass() != this.theType) throw new ClassCastException("Can't process data, because the given object is not of the specific type this handler is configuered for. (Was " + toClone.getClass().getName() + ". Should be " + this.theType.getName());
+		return copyData(toClone);
+	}
+
+	/**
+	 * Copies a data object with the copier. Unlike
+	 * {@link #cloneData(DataObject)} this doesn't check the type of the given
+	 * object, so it must only be used for objects that are already stored in
+	 * this handler.
+	 * 
+	 * @param toCopy
+	 *            The object to copy or null.
+	 * @return A copy of the object or null, if the given object was null.
+	 * @throws ClassCastException
+	 *             When the copier returns an object of another class.
+	 */
+	private T copyData(T toCopy) throws ClassCastException {
+		if (toCopy == null) return null;
+		long start = DataMetrics.start();
+		T copy = this.copier.copy(toCopy);
+		if (!this.copierVerified) {
+			if (copy == null || copy.getClass() != this.theType) throw new ClassCastException("The copier for " + this.theType.getName() + " doesn't return an object of the same class!");
+			this.copierVerified = true;
+		}
+		this.metrics.cloned(start);
+		return copy;
 	}
 
 	/**
@@ -232,6 +1555,11 @@ public class DataHandler<I, T extends DataObject<I>> {
 	 *             directory or not writable
 	 */
 	private void checkDataFile() throws IOException {
+		if (this.shardCount > 1) {
+			this.location.mkdirs();
+			if (!this.location.isDirectory()) throw new IOException("Couldn't create the data directory!");
+			return;
+		}
 		if (!this.location.exists()) {
 			this.location.getParentFile().mkdirs();
 			if (!this.location.getParentFile().exists()) throw new IOException("Couldn't create directory for the data file!");
@@ -239,10 +1567,142 @@ public class DataHandler<I, T extends DataObject<I>> {
 		else if (!(this.location.isFile() && this.location.canWrite())) throw new IOException("Can't write to the data file.");
 	}
 
-	private void loadSingleDataObject(Object p_objectFromStream) throws ClassCastException, NullPointerException, IOException {
-		if (!(p_objectFromStream.getClass().equals(this.theType))) throw new WrongObjectException("There is a incompatible Object in the data file. Object Type:" + p_objectFromStream.getClass().getName(), p_objectFromStream.getClass());
-		@SuppressWarnings("unchecked")
-		T tmpT = (T) p_objectFromStream;
-		this.setData(tmpT);
+	/**
+	 * @return The shard the given key belongs to.
+	 */
+	private int shardOf(I primaryKey) {
+		if (this.shardCount == 1 || primaryKey == null) return 0;
+		int h = primaryKey.hashCode();
+		return Math.floorMod(h ^ (h >>> 16), this.shardCount);
+	}
+
+	private File shardFile(int shard) {
+		return new File(this.location, "shard-" + shard + ".dat");
+	}
+
+	private File deltaFile(int number) {
+		if (this.shardCount == 1) return new File(this.location.getPath() + ".delta-" + number);
+		return new File(this.location, "delta-" + number + ".dat");
+	}
+
+	/**
+	 * @return The numbers of all delta files on disk.
+	 */
+	private TreeSet<Integer> findDeltas() {
+		File dir = this.shardCount == 1 ? this.location.getAbsoluteFile().getParentFile() : this.location;
+		String prefix = this.shardCount == 1 ? this.location.getName() + ".delta-" : "delta-";
+		String suffix = this.shardCount == 1 ? "" : ".dat";
+		TreeSet<Integer> ret = new TreeSet<>();
+		String[] names = dir == null ? null : dir.list();
+		if (names == null) return ret;
+		for (String name : names) {
+			if (!name.startsWith(prefix) || !name.endsWith(suffix)) {
+				continue;
+			}
+			try {
+				ret.add(Integer.valueOf(name.substring(prefix.length(), name.length() - suffix.length())));
+			} catch (NumberFormatException e) {
+				//Not a delta file.
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * A sweep of the {@link DataHandler#EXPIRY_SWEEPER}. It reschedules itself
+	 * after each tick until the handler was garbage collected or its timer
+	 * wheel was replaced.
+	 */
+	private static final class ExpirySweep implements Runnable {
+		private final WeakReference<DataHandler<?, ?>> handler;
+		private final TimerWheel<?> wheel;
+
+		ExpirySweep(DataHandler<?, ?> p_handler, TimerWheel<?> p_wheel) {
+			this.handler = new WeakReference<>(p_handler);
+			this.wheel = p_wheel;
+		}
+
+		void schedule() {
+			EXPIRY_SWEEPER.schedule(this, EXPIRY_TICK_MILLIS, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public void run() {
+			DataHandler<?, ?> h = this.handler.get();
+			if (h != null && h.sweepExpired(this.wheel)) {
+				schedule();
+			}
+		}
+	}
+
+	/**
+	 * What to write on a save.
+	 */
+	private class SavePlan {
+		/** The objects per shard to write or null. */
+		List<List<T>> shards;
+		/** The content of the delta file to write or null. */
+		List<Object> delta;
+		/** The keys contained in the delta. */
+		List<I> deltaKeys;
+		/** The number of the delta file to write. */
+		int deltaNumber;
+		/** Whether to delete all delta files afterwards. */
+		boolean foldDeltas;
+		/** Whether this is a full save, that the following deltas build on. */
+		boolean full;
+
+		SavePlan() {
+		}
+	}
+
+	/**
+	 * A group of changes to apply with {@link DataHandler#batch(Consumer)}.
+	 * The objects are cloned when they are added to the batch, so changing
+	 * them afterwards has no effect.
+	 */
+	public class Batch {
+		/** The changes by key. null means remove. */
+		private final LinkedHashMap<I, T> changes = new LinkedHashMap<>();
+		private boolean closed;
+
+		Batch() {
+		}
+
+		/**
+		 * Adds a new data object or replaces a old one if the primaryKey
+		 * already exists.
+		 * 
+		 * @param obj
+		 *            The data object to set.
+		 * @return this batch
+		 * @throws ClassCastException
+		 *             When the given object can't be cloned safely.
+		 * @throws NullPointerException
+		 *             When the parameter is null.
+		 */
+		public Batch set(T obj) throws ClassCastException, NullPointerException {
+			checkOpen();
+			if (obj == null) throw new NullPointerException("Can't set data, because the given object is null.");
+			this.changes.put(obj.getPrimaryID(), cloneData(obj));
+			return this;
+		}
+
+		/**
+		 * Removes a data object.
+		 * 
+		 * @param primaryKey
+		 *            The key for the data object to remove.
+		 * @return this batch
+		 */
+		public Batch remove(I primaryKey) {
+			checkOpen();
+			this.changes.put(primaryKey, null);
+			return this;
+		}
+
+		private void checkOpen() {
+			if (this.closed) throw new IllegalStateException("The batch was already applied.");
+		}
 	}
 }
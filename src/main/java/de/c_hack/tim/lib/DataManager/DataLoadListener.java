@@ -0,0 +1,40 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.DataManager;
+
+/**
+ * Get's informed about the progress while a {@link DataHandler} loads its
+ * data.
+ * 
+ * When multiple files are used, this is called from the threads reading the
+ * files, possibly concurrently.
+ * 
+ * @author Tim Neumann
+ */
+@FunctionalInterface
+public interface DataLoadListener {
+
+	/**
+	 * Called regularly while loading and after each file was read completely.
+	 * 
+	 * @param loadedObjects
+	 *            The number of objects read so far.
+	 * @param bytesRead
+	 *            The number of bytes read so far. (Approximately, as the files
+	 *            are read in blocks.)
+	 * @param totalBytes
+	 *            The total size of all data files.
+	 */
+	void progress(long loadedObjects, long bytesRead, long totalBytes);
+}
@@ -0,0 +1,465 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.DataManager;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The metrics of a {@link DataHandler}. They are collected all the time, so
+ * collecting them has to be cheap: The counters are {@link LongAdder}s, which
+ * don't contend between threads, and only one in {@link #SAMPLE_RATE}
+ * operations is timed.
+ * 
+ * The current values can be read directly, as a copy with {@link #snapshot()}
+ * or through JMX after {@link #register(String)}.
+ * 
+ * @author Tim Neumann
+ */
+public final class DataMetrics implements DataMetricsMXBean {
+	/** One in this many operations is timed. */
+	public static final int SAMPLE_RATE = 16;
+	/** Returned by {@link #start()} for operations that are not timed. */
+	static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+	private final LongAdder gets = new LongAdder();
+	private final Histogram getLatency = new Histogram();
+	private final LongAdder sets = new LongAdder();
+	private final Histogram setLatency = new Histogram();
+	private final LongAdder removes = new LongAdder();
+	private final Histogram removeLatency = new Histogram();
+	private final LongAdder clones = new LongAdder();
+	private final Histogram cloneTime = new Histogram();
+
+	private final LongAdder saves = new LongAdder();
+	private final LongAdder saveNanos = new LongAdder();
+	private volatile long lastSaveNanos;
+	private volatile long lastSaveBytes;
+	private final LongAdder loads = new LongAdder();
+	private volatile long lastLoadNanos;
+	private volatile long lastLoadBytes;
+	/** The bytes per object of the last save or load. */
+	private volatile double bytesPerObject;
+
+	/** Counts the objects in the data handler. */
+	private final LongSupplier objectCount;
+	/** The name this is registered with or null. */
+	private ObjectName registeredName;
+
+	/**
+	 * @param p_objectCount
+	 *            Counts the objects in the data handler.
+	 */
+	DataMetrics(LongSupplier p_objectCount) {
+		this.objectCount = p_objectCount;
+	}
+
+	/**
+	 * Registers this with the platform MBean server under the name
+	 * {@code de.c_hack.tim.lib:type=DataHandler,name=<name>}. It stays
+	 * registered until {@link #unregister()}, even if the data handler is
+	 * garbage collected. It then reports no objects.
+	 * 
+	 * @param name
+	 *            The name of the data handler.
+	 * @return The name of the registered MBean.
+	 * @throws JMException
+	 *             If the registration fails. (E.g. because the name is already
+	 *             used.)
+	 */
+	public synchronized ObjectName register(String name) throws JMException {
+		unregister();
+		ObjectName objectName = new ObjectName("de.c_hack.tim.lib:type=DataHandler,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		this.registeredName = objectName;
+		return objectName;
+	}
+
+	/**
+	 * Removes this from the platform MBean server, if it is registered.
+	 * 
+	 * @throws JMException
+	 *             If removing the registration fails.
+	 */
+	public synchronized void unregister() throws JMException {
+		if (this.registeredName == null) return;
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.registeredName);
+		this.registeredName = null;
+	}
+
+	/**
+	 * @return A copy of the current values.
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+	/**
+	 * Decides whether to time the operation that is about to start.
+	 * 
+	 * @return The start time or {@link #NOT_SAMPLED}.
+	 */
+	static long start() {
+		return ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0 ? System.nanoTime() : NOT_SAMPLED;
+	}
+
+	void get(long start) {
+		this.gets.increment();
+		this.getLatency.recordSince(start);
+	}
+
+	void set(long start, int count) {
+		this.sets.add(count);
+		this.setLatency.recordSince(start);
+	}
+
+	void remove(long start, int count) {
+		this.removes.add(count);
+		this.removeLatency.recordSince(start);
+	}
+
+	void cloned(long start) {
+		this.clones.increment();
+		this.cloneTime.recordSince(start);
+	}
+
+	void saved(long nanos, long bytes, long objects) {
+		this.saves.increment();
+		this.saveNanos.add(nanos);
+		this.lastSaveNanos = nanos;
+		this.lastSaveBytes = bytes;
+		if (objects > 0) {
+			this.bytesPerObject = (double) bytes / objects;
+		}
+	}
+
+	void loaded(long nanos, long bytes, long objects) {
+		this.loads.increment();
+		this.lastLoadNanos = nanos;
+		this.lastLoadBytes = bytes;
+		if (objects > 0) {
+			this.bytesPerObject = (double) bytes / objects;
+		}
+	}
+
+	@Override
+	public long getGetCount() {
+		return this.gets.sum();
+	}
+
+	@Override
+	public long getGetLatencyP50() {
+		return this.getLatency.percentile(0.5);
+	}
+
+	@Override
+	public long getGetLatencyP99() {
+		return this.getLatency.percentile(0.99);
+	}
+
+	@Override
+	public long getSetCount() {
+		return this.sets.sum();
+	}
+
+	@Override
+	public long getSetLatencyP50() {
+		return this.setLatency.percentile(0.5);
+	}
+
+	@Override
+	public long getSetLatencyP99() {
+		return this.setLatency.percentile(0.99);
+	}
+
+	@Override
+	public long getRemoveCount() {
+		return this.removes.sum();
+	}
+
+	@Override
+	public long getRemoveLatencyP50() {
+		return this.removeLatency.percentile(0.5);
+	}
+
+	@Override
+	public long getRemoveLatencyP99() {
+		return this.removeLatency.percentile(0.99);
+	}
+
+	@Override
+	public long getCloneCount() {
+		return this.clones.sum();
+	}
+
+	@Override
+	public long getCloneMeanNanos() {
+		return this.cloneTime.mean();
+	}
+
+	@Override
+	public long getSaveCount() {
+		return this.saves.sum();
+	}
+
+	@Override
+	public long getSaveTotalNanos() {
+		return this.saveNanos.sum();
+	}
+
+	@Override
+	public long getLastSaveNanos() {
+		return this.lastSaveNanos;
+	}
+
+	@Override
+	public long getLastSaveBytes() {
+		return this.lastSaveBytes;
+	}
+
+	@Override
+	public long getLoadCount() {
+		return this.loads.sum();
+	}
+
+	@Override
+	public long getLastLoadNanos() {
+		return this.lastLoadNanos;
+	}
+
+	@Override
+	public long getLastLoadBytes() {
+		return this.lastLoadBytes;
+	}
+
+	@Override
+	public long getObjectCount() {
+		return this.objectCount.getAsLong();
+	}
+
+	@Override
+	public long getEstimatedSerializedBytes() {
+		return (long) (getObjectCount() * this.bytesPerObject);
+	}
+
+	/**
+	 * A histogram of durations with one bucket per power of two.
+	 */
+	private static final class Histogram {
+		private final LongAdder[] buckets = new LongAdder[63];
+		private final LongAdder sum = new LongAdder();
+
+		Histogram() {
+			for (int i = 0; i < this.buckets.length; i++) {
+				this.buckets[i] = new LongAdder();
+			}
+		}
+
+		void recordSince(long start) {
+			if (start == NOT_SAMPLED) return;
+			long nanos = Math.max(0, System.nanoTime() - start);
+			this.buckets[nanos == 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos)].increment();
+			this.sum.add(nanos);
+		}
+
+		/**
+		 * @return The upper bound of the bucket containing the given
+		 *         percentile.
+		 */
+		long percentile(double p) {
+			long[] counts = new long[this.buckets.length];
+			long total = 0;
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = this.buckets[i].sum();
+				total += counts[i];
+			}
+			if (total == 0) return 0;
+			long rank = (long) Math.ceil(p * total);
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) return (1L << (i + 1)) - 1;
+			}
+			return Long.MAX_VALUE;
+		}
+
+		long mean() {
+			long total = 0;
+			for (LongAdder bucket : this.buckets) {
+				total += bucket.sum();
+			}
+			return total == 0 ? 0 : this.sum.sum() / total;
+		}
+	}
+
+	/**
+	 * A copy of the metrics at one point in time. As the metrics are updated
+	 * concurrently, the values may be a few operations apart.
+	 */
+	public static final class Snapshot implements DataMetricsMXBean {
+		private final long getCount;
+		private final long getLatencyP50;
+		private final long getLatencyP99;
+		private final long setCount;
+		private final long setLatencyP50;
+		private final long setLatencyP99;
+		private final long removeCount;
+		private final long removeLatencyP50;
+		private final long removeLatencyP99;
+		private final long cloneCount;
+		private final long cloneMeanNanos;
+		private final long saveCount;
+		private final long saveTotalNanos;
+		private final long lastSaveNanos;
+		private final long lastSaveBytes;
+		private final long loadCount;
+		private final long lastLoadNanos;
+		private final long lastLoadBytes;
+		private final long objectCount;
+		private final long estimatedSerializedBytes;
+
+		Snapshot(DataMetricsMXBean source) {
+			this.getCount = source.getGetCount();
+			this.getLatencyP50 = source.getGetLatencyP50();
+			this.getLatencyP99 = source.getGetLatencyP99();
+			this.setCount = source.getSetCount();
+			this.setLatencyP50 = source.getSetLatencyP50();
+			this.setLatencyP99 = source.getSetLatencyP99();
+			this.removeCount = source.getRemoveCount();
+			this.removeLatencyP50 = source.getRemoveLatencyP50();
+			this.removeLatencyP99 = source.getRemoveLatencyP99();
+			this.cloneCount = source.getCloneCount();
+			this.cloneMeanNanos = source.getCloneMeanNanos();
+			this.saveCount = source.getSaveCount();
+			this.saveTotalNanos = source.getSaveTotalNanos();
+			this.lastSaveNanos = source.getLastSaveNanos();
+			this.lastSaveBytes = source.getLastSaveBytes();
+			this.loadCount = source.getLoadCount();
+			this.lastLoadNanos = source.getLastLoadNanos();
+			this.lastLoadBytes = source.getLastLoadBytes();
+			this.objectCount = source.getObjectCount();
+			this.estimatedSerializedBytes = source.getEstimatedSerializedBytes();
+		}
+
+		@Override
+		public long getGetCount() {
+			return this.getCount;
+		}
+
+		@Override
+		public long getGetLatencyP50() {
+			return this.getLatencyP50;
+		}
+
+		@Override
+		public long getGetLatencyP99() {
+			return this.getLatencyP99;
+		}
+
+		@Override
+		public long getSetCount() {
+			return this.setCount;
+		}
+
+		@Override
+		public long getSetLatencyP50() {
+			return this.setLatencyP50;
+		}
+
+		@Override
+		public long getSetLatencyP99() {
+			return this.setLatencyP99;
+		}
+
+		@Override
+		public long getRemoveCount() {
+			return this.removeCount;
+		}
+
+		@Override
+		public long getRemoveLatencyP50() {
+			return this.removeLatencyP50;
+		}
+
+		@Override
+		public long getRemoveLatencyP99() {
+			return this.removeLatencyP99;
+		}
+
+		@Override
+		public long getCloneCount() {
+			return this.cloneCount;
+		}
+
+		@Override
+		public long getCloneMeanNanos() {
+			return this.cloneMeanNanos;
+		}
+
+		@Override
+		public long getSaveCount() {
+			return this.saveCount;
+		}
+
+		@Override
+		public long getSaveTotalNanos() {
+			return this.saveTotalNanos;
+		}
+
+		@Override
+		public long getLastSaveNanos() {
+			return this.lastSaveNanos;
+		}
+
+		@Override
+		public long getLastSaveBytes() {
+			return this.lastSaveBytes;
+		}
+
+		@Override
+		public long getLoadCount() {
+			return this.loadCount;
+		}
+
+		@Override
+		public long getLastLoadNanos() {
+			return this.lastLoadNanos;
+		}
+
+		@Override
+		public long getLastLoadBytes() {
+			return this.lastLoadBytes;
+		}
+
+		@Override
+		public long getObjectCount() {
+			return this.objectCount;
+		}
+
+		@Override
+		public long getEstimatedSerializedBytes() {
+			return this.estimatedSerializedBytes;
+		}
+
+		@Override
+		public String toString() {
+			return "gets=" + this.getCount + " (p50 " + this.getLatencyP50 + "ns, p99 " + this.getLatencyP99 + "ns), sets=" + this.setCount + " (p50 " + this.setLatencyP50 + "ns, p99 " + this.setLatencyP99 + "ns), removes=" + this.removeCount + " (p50 " + this.removeLatencyP50 + "ns, p99 " + this.removeLatencyP99 + "ns), clones=" + this.cloneCount + " (mean " + this.cloneMeanNanos + "ns), saves=" + this.saveCount + " (last " + this.lastSaveNanos + "ns, " + this.lastSaveBytes + " bytes), loads=" + this.loadCount + " (last " + this.lastLoadNanos + "ns, " + this.lastLoadBytes + " bytes), objects=" + this.objectCount + " (~" + this.estimatedSerializedBytes + " bytes)";
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.DataManager;
+
+/**
+ * The metrics of a {@link DataHandler} as exposed through JMX. See
+ * {@link DataMetrics}.
+ * 
+ * Latencies are taken from a sample of the operations and reported in
+ * nanoseconds. Percentiles are rounded up to the next power of two.
+ * 
+ * @author Tim Neumann
+ */
+public interface DataMetricsMXBean {
+
+	/**
+	 * @return The number of objects read with {@link DataHandler#getData(Object)}.
+	 */
+	long getGetCount();
+
+	/**
+	 * @return The median latency of reading a object.
+	 */
+	long getGetLatencyP50();
+
+	/**
+	 * @return The 99th percentile of the latency of reading a object.
+	 */
+	long getGetLatencyP99();
+
+	/**
+	 * @return The number of objects set. (Including objects set in batches.)
+	 */
+	long getSetCount();
+
+	/**
+	 * @return The median latency of setting a object. (Including auto
+	 *         saving.)
+	 */
+	long getSetLatencyP50();
+
+	/**
+	 * @return The 99th percentile of the latency of setting a object.
+	 */
+	long getSetLatencyP99();
+
+	/**
+	 * @return The number of keys removed. (Including keys removed in batches.)
+	 */
+	long getRemoveCount();
+
+	/**
+	 * @return The median latency of removing a object. (Including auto
+	 *         saving.)
+	 */
+	long getRemoveLatencyP50();
+
+	/**
+	 * @return The 99th percentile of the latency of removing a object.
+	 */
+	long getRemoveLatencyP99();
+
+	/**
+	 * @return The number of cloned objects.
+	 */
+	long getCloneCount();
+
+	/**
+	 * @return The mean time to clone a object.
+	 */
+	long getCloneMeanNanos();
+
+	/**
+	 * @return The number of saves. (Including background saves and
+	 *         compactions.)
+	 */
+	long getSaveCount();
+
+	/**
+	 * @return The time all saves took together in nanoseconds.
+	 */
+	long getSaveTotalNanos();
+
+	/**
+	 * @return The time the last save took in nanoseconds.
+	 */
+	long getLastSaveNanos();
+
+	/**
+	 * @return The number of bytes written by the last save.
+	 */
+	long getLastSaveBytes();
+
+	/**
+	 * @return The number of loads.
+	 */
+	long getLoadCount();
+
+	/**
+	 * @return The time the last load took in nanoseconds.
+	 */
+	long getLastLoadNanos();
+
+	/**
+	 * @return The number of bytes read by the last load.
+	 */
+	long getLastLoadBytes();
+
+	/**
+	 * @return The number of objects in the data handler.
+	 */
+	long getObjectCount();
+
+	/**
+	 * @return The estimated size of all objects when saved. It is extrapolated
+	 *         from the bytes per object of the last save or load, so it is 0
+	 *         until then.
+	 */
+	long getEstimatedSerializedBytes();
+}
@@ -0,0 +1,165 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.DataManager;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+
+/**
+ * A subscription to the changes of a {@link DataHandler}.
+ * 
+ * The changes are buffered and delivered in batches on the executor of the
+ * subscription. When the buffer is full, the thread changing the data waits
+ * until there is space again. So a listener must not change the data handler
+ * it is subscribed to from within
+ * {@link DataChangeListener#onChanges(List)}.
+ * 
+ * If the listener (or the copying of a value for it) throws an exception, the
+ * subscription is cancelled. The exception is available through
+ * {@link #getFailure()}.
+ * 
+ * @author Tim Neumann
+ * @param <I>
+ *            The type of the primary ID
+ * @param <T>
+ *            The type of the data.
+ */
+public final class DataSubscription<I, T extends DataObject<I>> {
+	/** The maximum number of events delivered in one call. */
+	private static final int MAX_BATCH = 256;
+
+	private final DataHandler<I, T> handler;
+	private final DataChangeListener<I, T> listener;
+	private final Executor executor;
+	private final UnaryOperator<T> copier;
+	/** The events not delivered yet. Their values are not copied yet. */
+	private final ArrayBlockingQueue<DataChangeEvent<I, T>> buffer;
+	/** Only changes after this are delivered. */
+	private final long startSequence;
+	/** The existing data to deliver first or null. Only used by the delivering thread. */
+	private Iterator<Entry<I, T>> replay;
+	/** Whether a delivery is scheduled or running. */
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private volatile boolean cancelled;
+	/** The exception that cancelled this subscription or null. */
+	private volatile RuntimeException failure;
+
+	DataSubscription(DataHandler<I, T> p_handler, DataChangeListener<I, T> p_listener, Executor p_executor, int p_bufferSize, UnaryOperator<T> p_copier, long p_startSequence, List<Entry<I, T>> p_replay) {
+		this.handler = p_handler;
+		this.listener = p_listener;
+		this.executor = p_executor;
+		this.buffer = new ArrayBlockingQueue<>(p_bufferSize);
+		this.copier = p_copier;
+		this.startSequence = p_startSequence;
+		this.replay = p_replay == null ? null : p_replay.iterator();
+	}
+
+	/**
+	 * Stops the delivery of changes. Changes already buffered are dropped.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+		this.handler.unsubscribe(this);
+		this.buffer.clear();
+	}
+
+	/**
+	 * @return Whether this subscription was cancelled.
+	 */
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	/**
+	 * @return The exception thrown while delivering changes, which cancelled
+	 *         this subscription, or null.
+	 */
+	public RuntimeException getFailure() {
+		return this.failure;
+	}
+
+	/**
+	 * Buffers a change. Waits if the buffer is full.
+	 * 
+	 * @param event
+	 *            The change with the handler's own value.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting.
+	 */
+	void offer(DataChangeEvent<I, T> event) throws InterruptedException {
+		if (event.getSequence() <= this.startSequence) return;
+		while (!this.cancelled) {
+			if (this.buffer.offer(event, 10, TimeUnit.MILLISECONDS)) return;
+			//Make sure the buffer is being emptied.
+			schedule();
+		}
+	}
+
+	/**
+	 * Makes sure a delivery runs.
+	 */
+	void schedule() {
+		if (this.scheduled.compareAndSet(false, true)) {
+			this.executor.execute(this::deliver);
+		}
+	}
+
+	private void deliver() {
+		try {
+			deliverAll();
+		} catch (RuntimeException e) {
+			this.failure = e;
+			cancel();
+		}
+	}
+
+	private void deliverAll() {
+		while (true) {
+			List<DataChangeEvent<I, T>> batch = new ArrayList<>();
+			if (this.replay != null) {
+				while (batch.size() < MAX_BATCH && this.replay.hasNext()) {
+					Entry<I, T> e = this.replay.next();
+					batch.add(new DataChangeEvent<>(DataChangeEvent.Type.PUT, this.startSequence, e.getKey(), this.copier.apply(e.getValue())));
+				}
+				if (!this.replay.hasNext()) {
+					this.replay = null;
+				}
+			}
+			else {
+				List<DataChangeEvent<I, T>> raw = new ArrayList<>();
+				this.buffer.drainTo(raw, MAX_BATCH);
+				for (DataChangeEvent<I, T> e : raw) {
+					batch.add(e.getValue() == null ? e : new DataChangeEvent<>(e.getType(), e.getSequence(), e.getKey(), this.copier.apply(e.getValue())));
+				}
+			}
+
+			if (batch.isEmpty()) {
+				this.scheduled.set(false);
+				//Something might have been added after draining, but before resetting the flag.
+				if (this.buffer.isEmpty() || !this.scheduled.compareAndSet(false, true)) return;
+				continue;
+			}
+			if (this.cancelled) return;
+
+			this.listener.onChanges(batch);
+		}
+	}
+}
@@ -0,0 +1,438 @@
+/*
+ * TimLib
+ *
+ * A collection of useful classes and methods.
+ *
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.DataManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * A disk backed data handler. In contrast to the {@link DataHandler} it
+ * doesn't keep all objects on the heap.
+ *
+ * The data file is a log of records. Every {@link #setData(DataObject)}
+ * appends the object and every {@link #removeData(Object)} appends a removal
+ * record. Only an index from the primary keys to the file offsets of their
+ * latest records is kept in memory. Objects are loaded on demand and kept in a
+ * bounded LRU cache.
+ *
+ * Replaced and removed records stay in the file until {@link #compact()} is
+ * called.
+ *
+ * @author Tim Neumann
+ * @param <I>
+ *            The type of the primary ID
+ * @param <T>
+ *            The type of the data.
+ */
+public class DiskDataHandler<I, T extends DataObject<I>> implements Closeable {
+
+	/** The default number of objects held in the cache. */
+	public static final int DEFAULT_CACHE_CAPACITY = 1024;
+
+	private static final byte RECORD_PUT = 1;
+	private static final byte RECORD_REMOVE = 2;
+
+	private Class<T> theType;
+	private File location;
+	private RandomAccessFile file;
+
+	/** The file offset of the value length field of the latest record per key. */
+	private HashMap<I, Long> index = new HashMap<>();
+	private LinkedHashMap<I, T> cache;
+	private int cacheCapacity;
+
+	/** The number of bytes in the file belonging to replaced or removed records. */
+	private long garbageBytes;
+
+	private long cacheHits;
+	private long cacheMisses;
+
+	/**
+	 * Creates a new DiskDataHandler with the default cache capacity.
+	 *
+	 * @param p_theDataType
+	 *            The data type (class) this Data Handler is for.
+	 * @param p_location
+	 *            The file location of this Data Handler.
+	 * @throws NullPointerException
+	 *             When a parameter is null
+	 * @throws IOException
+	 *             When there is a problem with the file location
+	 * @throws ClassNotFoundException
+	 *             If the class of a key in the file is not defined in this
+	 *             project.
+	 */
+	public DiskDataHandler(Class<T> p_theDataType, File p_location) throws NullPointerException, IOException, ClassNotFoundException {
+		this(p_theDataType, p_location, DEFAULT_CACHE_CAPACITY);
+	}
+
+	/**
+	 * Creates a new DiskDataHandler and builds the index from the data file.
+	 *
+	 * @param p_theDataType
+	 *            The data type (class) this Data Handler is for.
+	 * @param p_location
+	 *            The file location of this Data Handler.
+	 * @param p_cacheCapacity
+	 *            The maximum number of objects to keep in the cache.
+	 * @throws NullPointerException
+	 *             When a parameter is null
+	 * @throws IOException
+	 *             When there is a problem with the file location
+	 * @throws ClassNotFoundException
+	 *             If the class of a key in the file is not defined in this
+	 *             project.
+	 */
+	public DiskDataHandler(Class<T> p_theDataType, File p_location, int p_cacheCapacity) throws NullPointerException, IOException, ClassNotFoundException {
+		if (p_theDataType == null || p_location == null) throw new NullPointerException();
+		this.theType = p_theDataType;
+		this.location = p_location;
+		setCacheCapacity(p_cacheCapacity);
+		File parent = this.location.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		this.file = new RandomAccessFile(this.location, "rw");
+		buildIndex();
+	}
+
+	/**
+	 * Get a data object.
+	 *
+	 * @param primaryKey
+	 *            The key for the data object to get.
+	 * @return The data object or null, if the searched object is not found.
+	 * @throws ClassCastException
+	 *             When the retrieved object can't be cloned safely.
+	 * @throws IOException
+	 *             When reading the object from the file fails.
+	 * @throws ClassNotFoundException
+	 *             If the class of the object is not defined in this project.
+	 */
+	public synchronized T getData(I primaryKey) throws ClassCastException, IOException, ClassNotFoundException {
+		T obj = lookup(primaryKey);
+		if (obj == null) return null;
+		return cloneData(obj);
+	}
+
+	/**
+	 * Get's all the data in a HashMap. This loads every object in the file.
+	 *
+	 * @return a HashMap with all Object of this DataHandler.
+	 * @throws ClassCastException
+	 *             When a object in the DataHandler can't be cloned safely.
+	 * @throws IOException
+	 *             When reading from the file fails.
+	 * @throws ClassNotFoundException
+	 *             If the class of an object is not defined in this project.
+	 */
+	public synchronized HashMap<I, T> getAllData() throws ClassCastException, IOException, ClassNotFoundException {
+		HashMap<I, T> ret = new HashMap<>();
+		for (I key : this.index.keySet()) {
+			ret.put(key, cloneData(lookup(key)));
+		}
+		return ret;
+	}
+
+	/**
+	 * Adds a new data object or replaces a old one if the primaryKey already
+	 * exists. The object is appended to the data file immediately.
+	 *
+	 * @param obj
+	 *            The data object to set.
+	 * @throws ClassCastException
+	 *             When the given object can't be cloned safely.
+	 * @throws NullPointerException
+	 *             When the parameter is null.
+	 * @throws IOException
+	 *             When writing to the file fails.
+	 */
+	public synchronized void setData(T obj) throws ClassCastException, NullPointerException, IOException {
+		if (obj == null) throw new NullPointerException("Can't set data, because the given object is null.");
+		T clone = cloneData(obj);
+		I key = clone.getPrimaryID();
+		long valueOffset = appendRecord(RECORD_PUT, key, clone);
+		discard(this.index.put(key, Long.valueOf(valueOffset)));
+		if (this.cacheCapacity > 0) {
+			this.cache.put(key, clone);
+		}
+	}
+
+	/**
+	 * Removes a data object from the data handler.
+	 *
+	 * @param primaryKey
+	 *            The key for the data object to remove.
+	 * @throws IOException
+	 *             When writing to the file fails.
+	 */
+	public synchronized void removeData(I primaryKey) throws IOException {
+		if (!this.index.containsKey(primaryKey)) return;
+		long start = this.file.length();
+		appendRecord(RECORD_REMOVE, primaryKey, null);
+		this.garbageBytes += this.file.length() - start;
+		discard(this.index.remove(primaryKey));
+		this.cache.remove(primaryKey);
+	}
+
+	/**
+	 * @return The number of objects in this data handler.
+	 */
+	public synchronized int size() {
+		return this.index.size();
+	}
+
+	/**
+	 * Rewrites the data file so that it only contains the latest record of
+	 * every key. If the rewritten file can't replace the old one, the handler
+	 * keeps working with the old file.
+	 *
+	 * @throws IOException
+	 *             If something goes wrong with the IO.
+	 */
+	public synchronized void compact() throws IOException {
+		File tmp = new File(this.location.getPath() + ".compact");
+		HashMap<I, Long> newIndex = new HashMap<>();
+		try (RandomAccessFile out = new RandomAccessFile(tmp, "rw")) {
+			out.setLength(0);
+			for (Entry<I, Long> e : this.index.entrySet()) {
+				byte[] key = serialize(e.getKey());
+				byte[] value = readValueBytes(e.getValue().longValue());
+				out.writeByte(RECORD_PUT);
+				out.writeInt(key.length);
+				out.write(key);
+				newIndex.put(e.getKey(), Long.valueOf(out.getFilePointer()));
+				out.writeInt(value.length);
+				out.write(value);
+			}
+			out.getFD().sync();
+		}
+		this.file.close();
+		try {
+			try {
+				Files.move(tmp.toPath(), this.location.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), this.location.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException | RuntimeException e) {
+			//The old file is still in place, so keep using it with the old index.
+			this.file = new RandomAccessFile(this.location, "rw");
+			tmp.delete();
+			throw e;
+		}
+		this.file = new RandomAccessFile(this.location, "rw");
+		this.index = newIndex;
+		this.garbageBytes = 0;
+	}
+
+	/**
+	 * @return Approximately the number of bytes in the data file, that would be
+	 *         freed by {@link #compact()}.
+	 */
+	public synchronized long getGarbageBytes() {
+		return this.garbageBytes;
+	}
+
+	/**
+	 * Set's the maximum number of objects held in the cache. Excess objects
+	 * are evicted least recently used first.
+	 *
+	 * @param p_cacheCapacity
+	 *            The new capacity. 0 disables the cache.
+	 */
+	public synchronized void setCacheCapacity(int p_cacheCapacity) {
+		if (p_cacheCapacity < 0) throw new IllegalArgumentException("The cache capacity can't be negative.");
+		this.cacheCapacity = p_cacheCapacity;
+		LinkedHashMap<I, T> newCache = new LinkedHashMap<I, T>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<I, T> eldest) {
+				return size() > DiskDataHandler.this.cacheCapacity;
+			}
+		};
+		if (this.cache != null) {
+			newCache.putAll(this.cache);
+		}
+		this.cache = newCache;
+	}
+
+	/**
+	 * @return The number of lookups that were answered from the cache.
+	 */
+	public synchronized long getCacheHitCount() {
+		return this.cacheHits;
+	}
+
+	/**
+	 * @return The number of lookups that had to read from the data file.
+	 */
+	public synchronized long getCacheMissCount() {
+		return this.cacheMisses;
+	}
+
+	/**
+	 * Closes the data file. The data handler can't be used afterwards.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		this.cache.clear();
+		this.file.close();
+	}
+
+	private T lookup(I primaryKey) throws IOException, ClassNotFoundException {
+		T cached = this.cache.get(primaryKey);
+		if (cached != null) {
+			this.cacheHits++;
+			return cached;
+		}
+		Long offset = this.index.get(primaryKey);
+		if (offset == null) return null;
+		this.cacheMisses++;
+		Object read = deserialize(readValueBytes(offset.longValue()));
+		if (!read.getClass().equals(this.theType)) throw new WrongObjectException("There is a incompatible Object in the data file. Object Type:" + read.getClass().getName(), read.getClass());
+		@SuppressWarnings("unchecked")
+		T obj = (T) read;
+		if (this.cacheCapacity > 0) {
+			this.cache.put(primaryKey, obj);
+		}
+		return obj;
+	}
+
+	/**
+	 * Scans the data file and builds the index. A incomplete record at the
+	 * end of the file (e.g. from a crash while writing) is cut off.
+	 */
+	private void buildIndex() throws IOException, ClassNotFoundException {
+		long length = this.file.length();
+		long pos = 0;
+		this.file.seek(0);
+		try {
+			while (pos < length) {
+				byte type = this.file.readByte();
+				byte[] keyBytes = new byte[this.file.readInt()];
+				this.file.readFully(keyBytes);
+				long valueOffset = this.file.getFilePointer();
+				long end = valueOffset;
+				if (type == RECORD_PUT) {
+					end += 4 + this.file.readInt();
+					if (end > length) throw new EOFException();
+					this.file.seek(end);
+				}
+
+				@SuppressWarnings("unchecked")
+				I key = (I) deserialize(keyBytes);
+				if (type == RECORD_PUT) {
+					discard(this.index.put(key, Long.valueOf(valueOffset)));
+				}
+				else {
+					discard(this.index.remove(key));
+					this.garbageBytes += end - pos;
+				}
+				pos = end;
+			}
+		} catch (EOFException e) {
+			this.file.setLength(pos);
+		}
+		this.file.seek(pos);
+	}
+
+	/**
+	 * Counts the record belonging to the given previous offset as garbage.
+	 */
+	private void discard(Long previousValueOffset) throws IOException {
+		if (previousValueOffset == null) return;
+		long end = this.file.getFilePointer();
+		this.file.seek(previousValueOffset.longValue());
+		this.garbageBytes += 4 + this.file.readInt();
+		this.file.seek(end);
+	}
+
+	/**
+	 * Appends a record to the end of the data file.
+	 *
+	 * @return The offset of the value length field.
+	 */
+	private long appendRecord(byte type, I key, T value) throws IOException {
+		byte[] keyBytes = serialize(key);
+		byte[] valueBytes = value == null ? null : serialize(value);
+		long start = this.file.length();
+		this.file.seek(start);
+		this.file.writeByte(type);
+		this.file.writeInt(keyBytes.length);
+		this.file.write(keyBytes);
+		long valueOffset = this.file.getFilePointer();
+		if (valueBytes != null) {
+			this.file.writeInt(valueBytes.length);
+			this.file.write(valueBytes);
+		}
+		return valueOffset;
+	}
+
+	private byte[] readValueBytes(long valueOffset) throws IOException {
+		long end = this.file.getFilePointer();
+		this.file.seek(valueOffset);
+		byte[] ret = new byte[this.file.readInt()];
+		this.file.readFully(ret);
+		this.file.seek(end);
+		return ret;
+	}
+
+	private static byte[] serialize(Object obj) throws IOException {
+		ByteArrayOutputStream bOS = new ByteArrayOutputStream();
+		try (ObjectOutputStream oOS = new ObjectOutputStream(bOS)) {
+			oOS.writeObject(obj);
+		}
+		return bOS.toByteArray();
+	}
+
+	private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream oIS = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return oIS.readObject();
+		}
+	}
+
+	/**
+	 * Safely clones a data object.
+	 *
+	 * @param toClone
+	 *            The object to clone
+	 * @throws ClassCastException
+	 *             When the given object isn't compatible to this DataHandlers
+	 *             type or clones to another type
+	 * @return A clone of the original object.
+	 */
+	private T cloneData(T toClone) throws ClassCastException {
+		if (!toClone.getClass().equals(this.theType)) throw new ClassCastException("Can't process data, because the given object is not of the specific type this handler is configuered for. (Was " + toClone.getClass().getName() + ". Should be " + this.theType.getName());
+		DataObject<I> clone = toClone.clone();
+		if (!clone.getClass().equals(toClone.getClass())) throw new ClassCastException("The class " + toClone.getClass().getName() + " doesn't return an object of the same class when cloned!");
+		@SuppressWarnings("unchecked")
+		T cloneT = (T) clone;
+		return cloneT;
+	}
+}
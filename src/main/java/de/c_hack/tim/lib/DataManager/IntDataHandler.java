@@ -0,0 +1,237 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.DataManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A data handler for objects with a primitive int as primary ID.
+ * 
+ * It works like a single file {@link DataHandler}, but stores the objects in
+ * a open addressing hash map with primitive keys. So there are no boxed keys
+ * and no map entry objects, which saves a lot of memory and lookup time for
+ * large amounts of objects.
+ * 
+ * The files are compatible with the ones of the DataHandler. All methods are
+ * thread safe.
+ * 
+ * @author Tim Neumann
+ * @param <T>
+ *            The type of the data.
+ */
+public class IntDataHandler<T extends IntDataObject> {
+
+	private Class<T> theType;
+	private IntObjectMap<T> dataMap = new IntObjectMap<>(0);
+	private File location;
+
+	/** Whether auto save every write action. */
+	private boolean autoSaving;
+
+	/** Whether to write the compressed file format. */
+	private boolean compression;
+
+	/**
+	 * Creates a new IntDataHandler. (With auto saving off.)
+	 * 
+	 * @param p_theDataType
+	 *            The data type (class) this Data Handler is for.
+	 * @param p_location
+	 *            The file location of this Data Handler.
+	 * @throws NullPointerException
+	 *             When a parameter is null
+	 * @throws IOException
+	 *             When there is a problem with the file location
+	 */
+	public IntDataHandler(Class<T> p_theDataType, File p_location) throws NullPointerException, IOException {
+		this(p_theDataType, p_location, false);
+	}
+
+	/**
+	 * Creates a new IntDataHandler
+	 * 
+	 * @param p_theDataType
+	 *            The data type (class) this Data Handler is for.
+	 * @param p_location
+	 *            The file location of this Data Handler.
+	 * @param p_autoSaving
+	 *            Whether to automatically save on write.
+	 * @throws NullPointerException
+	 *             When a parameter is null
+	 * @throws IOException
+	 *             When there is a problem with the file location
+	 */
+	public IntDataHandler(Class<T> p_theDataType, File p_location, boolean p_autoSaving) throws NullPointerException, IOException {
+		if (p_theDataType == null || p_location == null) throw new NullPointerException();
+		this.theType = p_theDataType;
+		this.location = p_location;
+		this.autoSaving = p_autoSaving;
+		File parent = this.location.getAbsoluteFile().getParentFile();
+		if (!this.location.exists()) {
+			parent.mkdirs();
+			if (!parent.exists()) throw new IOException("Couldn't create directory for the data file!");
+		}
+		else if (!(this.location.isFile() && this.location.canWrite())) throw new IOException("Can't write to the data file.");
+	}
+
+	/**
+	 * Get's all the data in a HashMap.
+	 * 
+	 * @return a HashMap with all Object of this DataHandler.
+	 * @throws ClassCastException
+	 *             When a object in the DataHandler can't be cloned safely.
+	 */
+	public synchronized HashMap<Integer, T> getAllData() throws ClassCastException {
+		HashMap<Integer, T> ret = new HashMap<>((int) (this.dataMap.size() / 0.75f) + 1);
+		this.dataMap.forEach((key, value) -> ret.put(Integer.valueOf(key), cloneData(value)));
+		return ret;
+	}
+
+	/**
+	 * Get a data object.
+	 * 
+	 * @param primaryKey
+	 *            The key for the data object to get.
+	 * @return The data object or null, if the searched object is not found.
+	 * @throws ClassCastException
+	 *             When the retrieved object can't be cloned safely.
+	 */
+	public synchronized T getData(int primaryKey) throws ClassCastException {
+		T obj = this.dataMap.get(primaryKey);
+		return obj == null ? null : cloneData(obj);
+	}
+
+	/**
+	 * @param primaryKey
+	 *            The key to look for.
+	 * @return Whether there is a data object with the given key.
+	 */
+	public synchronized boolean containsData(int primaryKey) {
+		return this.dataMap.get(primaryKey) != null;
+	}
+
+	/**
+	 * @return The number of data objects.
+	 */
+	public synchronized int size() {
+		return this.dataMap.size();
+	}
+
+	/**
+	 * Adds a new data object or replaces a old one if the primaryKey already
+	 * exists
+	 * 
+	 * @param obj
+	 *            The data object to set.
+	 * @throws ClassCastException
+	 *             When the given object can't be cloned safely.
+	 * @throws NullPointerException
+	 *             When the parameter is null.
+	 * @throws IOException
+	 *             When saving fails.
+	 */
+	public void setData(T obj) throws ClassCastException, NullPointerException, IOException {
+		if (obj == null) throw new NullPointerException("Can't set data, because the given object is null.");
+		T clone = cloneData(obj);
+		synchronized (this) {
+			this.dataMap.put(clone.getPrimaryIntID(), clone);
+		}
+		if (this.autoSaving) {
+			saveData();
+		}
+	}
+
+	/**
+	 * Removes a data object from the data handler.
+	 * 
+	 * @param primaryKey
+	 *            The key for the data object to remove.
+	 * @throws IOException
+	 *             When saving fails.
+	 */
+	public void removeData(int primaryKey) throws IOException {
+		synchronized (this) {
+			this.dataMap.remove(primaryKey);
+		}
+		if (this.autoSaving) {
+			saveData();
+		}
+	}
+
+	/**
+	 * Set's whether the data file is compressed. See
+	 * {@link DataHandler#setCompression(boolean)}.
+	 * 
+	 * @param p_compression
+	 *            Whether to compress the data file.
+	 */
+	public synchronized void setCompression(boolean p_compression) {
+		this.compression = p_compression;
+	}
+
+	/**
+	 * Saves the data of this DataHandler
+	 * 
+	 * @throws IOException
+	 *             If something goes wrong with the IO.
+	 */
+	public synchronized void saveData() throws IOException {
+		List<T> objects = new ArrayList<>(this.dataMap.size());
+		this.dataMap.forEach((key, value) -> objects.add(value));
+		DataFiles.write(this.location, objects, this.compression);
+	}
+
+	/**
+	 * Loads the data of the file system
+	 * 
+	 * @throws IOException
+	 *             If something goes wrong with the IO.
+	 * @throws WrongObjectException
+	 *             If the file contains an object that is the wrong type.
+	 * @throws ClassNotFoundException
+	 *             If the class of an object in the file is not defined in this
+	 *             project.
+	 */
+	public synchronized void loadData() throws IOException, WrongObjectException, ClassNotFoundException {
+		List<T> objects = DataFiles.read(this.location, this.theType, null);
+		IntObjectMap<T> newMap = new IntObjectMap<>(objects.size());
+		for (T obj : objects) {
+			newMap.put(obj.getPrimaryIntID(), obj);
+		}
+		this.dataMap = newMap;
+	}
+
+	/**
+	 * Safely clones a data object.
+	 * 
+	 * @param toClone
+	 *            The object to clone
+	 * @throws ClassCastException
+	 *             When the given object isn't compatible to this DataHandlers
+	 *             type or clones to another type
+	 * @return A clone of the original object.
+	 */
+	private T cloneData(T toClone) throws ClassCastException {
+		if (!toClone.getClass().equals(this.theType)) throw new ClassCastException("Can't process data, because the given object is not of the specific type this handler is configuered for. (Was " + toClone.getClass().getName() + ". Should be " + this.theType.getName());
+		IntDataObject clone = toClone.clone();
+		if (!clone.getClass().equals(toClone.getClass())) throw new ClassCastException("The class " + toClone.getClass().getName() + " doesn't return an object of the same class when cloned!");
+		@SuppressWarnings("unchecked")
+		T cloneT = (T) clone;
+		return cloneT;
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.DataManager;
+
+/**
+ * A object for the {@link IntDataHandler}. It has a primitive int as primary
+ * ID.
+ * 
+ * @author Tim Neumann
+ */
+public abstract class IntDataObject extends DataObject<Integer> {
+
+	/**
+	 * Serial Version UID
+	 */
+	private static final long serialVersionUID = 2764203387455312918L;
+
+	/**
+	 * @return the primary ID of the Data Object.
+	 */
+	public abstract int getPrimaryIntID();
+
+	/**
+	 * @return the boxed primary ID of the Data Object.
+	 */
+	@Override
+	public final Integer getPrimaryID() {
+		return Integer.valueOf(getPrimaryIntID());
+	}
+
+	@Override
+	public abstract IntDataObject clone();
+}
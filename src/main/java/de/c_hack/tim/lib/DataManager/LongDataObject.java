@@ -0,0 +1,44 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.DataManager;
+
+/**
+ * A object for the {@link LongDataHandler}. It has a primitive long as primary
+ * ID.
+ * 
+ * @author Tim Neumann
+ */
+public abstract class LongDataObject extends DataObject<Long> {
+
+	/**
+	 * Serial Version UID
+	 */
+	private static final long serialVersionUID = -5226419472190533166L;
+
+	/**
+	 * @return the primary ID of the Data Object.
+	 */
+	public abstract long getPrimaryLongID();
+
+	/**
+	 * @return the boxed primary ID of the Data Object.
+	 */
+	@Override
+	public final Long getPrimaryID() {
+		return Long.valueOf(getPrimaryLongID());
+	}
+
+	@Override
+	public abstract LongDataObject clone();
+}
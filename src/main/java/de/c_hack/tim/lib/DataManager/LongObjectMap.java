@@ -0,0 +1,203 @@
+/*
+ * TimLib
+ *
+ * A collection of useful classes and methods.
+ *
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.DataManager;
+
+/**
+ * A hash map from primitive longs to objects. It uses open addressing with
+ * linear probing, so there are no entry objects and the keys are not boxed.
+ *
+ * Null values are not allowed. Not thread safe.
+ *
+ * @author Tim Neumann
+ * @param <V>
+ *            The type of the values.
+ */
+final class LongObjectMap<V> {
+	/** The maximum fill ratio before growing. */
+	private static final float LOAD_FACTOR = 0.6f;
+
+	private long[] keys;
+	/** The values. null marks a free slot. */
+	private Object[] values;
+	private int size;
+	private int mask;
+	private int growAt;
+
+	/**
+	 * Creates a new map.
+	 *
+	 * @param expectedSize
+	 *            The number of entries to allocate space for.
+	 */
+	LongObjectMap(int expectedSize) {
+		int capacity = 16;
+		while (capacity * LOAD_FACTOR < expectedSize) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	/**
+	 * @param key
+	 *            The key to look up.
+	 * @return The value for the key or null.
+	 */
+	V get(long key) {
+		int slot = slot(key);
+		while (this.values[slot] != null) {
+			if (this.keys[slot] == key) {
+				@SuppressWarnings("unchecked")
+				V ret = (V) this.values[slot];
+				return ret;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		return null;
+	}
+
+	/**
+	 * @param key
+	 *            The key.
+	 * @param value
+	 *            The value. Not null.
+	 * @return The previous value or null.
+	 */
+	V put(long key, V value) {
+		if (value == null) throw new NullPointerException("Null values are not supported.");
+		int slot = slot(key);
+		while (this.values[slot] != null) {
+			if (this.keys[slot] == key) {
+				@SuppressWarnings("unchecked")
+				V ret = (V) this.values[slot];
+				this.values[slot] = value;
+				return ret;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		this.keys[slot] = key;
+		this.values[slot] = value;
+		if (++this.size > this.growAt) {
+			rehash(this.keys.length << 1);
+		}
+		return null;
+	}
+
+	/**
+	 * @param key
+	 *            The key to remove.
+	 * @return The removed value or null.
+	 */
+	V remove(long key) {
+		int slot = slot(key);
+		while (this.values[slot] != null) {
+			if (this.keys[slot] == key) {
+				@SuppressWarnings("unchecked")
+				V ret = (V) this.values[slot];
+				shiftBack(slot);
+				this.size--;
+				return ret;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		return null;
+	}
+
+	/**
+	 * @return The number of entries.
+	 */
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * Calls the visitor for every entry.
+	 *
+	 * @param visitor
+	 *            The visitor.
+	 */
+	void forEach(Visitor<? super V> visitor) {
+		for (int i = 0; i < this.values.length; i++) {
+			if (this.values[i] != null) {
+				@SuppressWarnings("unchecked")
+				V value = (V) this.values[i];
+				visitor.visit(this.keys[i], value);
+			}
+		}
+	}
+
+	/**
+	 * Closes the gap at the given slot by moving back following entries, that
+	 * would otherwise become unreachable.
+	 */
+	private void shiftBack(int p_gap) {
+		int gap = p_gap;
+		int slot = (gap + 1) & this.mask;
+		while (this.values[slot] != null) {
+			int home = slot(this.keys[slot]);
+			//Move the entry, if its home slot is not in the cyclic range (gap, slot].
+			if (((slot - home) & this.mask) >= ((slot - gap) & this.mask)) {
+				this.keys[gap] = this.keys[slot];
+				this.values[gap] = this.values[slot];
+				gap = slot;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		this.values[gap] = null;
+	}
+
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & this.mask;
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		this.mask = capacity - 1;
+		this.growAt = (int) (capacity * LOAD_FACTOR);
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+		allocate(capacity);
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] != null) {
+				int slot = slot(oldKeys[i]);
+				while (this.values[slot] != null) {
+					slot = (slot + 1) & this.mask;
+				}
+				this.keys[slot] = oldKeys[i];
+				this.values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Visits the entries of the map.
+	 *
+	 * @param <V>
+	 *            The type of the values.
+	 */
+	@FunctionalInterface
+	interface Visitor<V> {
+		/**
+		 * @param key
+		 *            The key of the entry.
+		 * @param value
+		 *            The value of the entry.
+		 */
+		void visit(long key, V value);
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * TimLib
+ *
+ * A collection of useful classes and methods.
+ *
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.DataManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A input stream reading a file through memory mapping. As a single mapping
+ * is limited to 2 GB, the file is mapped in chunks one after another.
+ *
+ * The mapping is released by the garbage collector, not when this stream is
+ * closed.
+ *
+ * @author Tim Neumann
+ */
+final class MappedInputStream extends InputStream {
+	/** The size of one mapped chunk. */
+	static final int CHUNK_SIZE = 1 << 30;
+
+	private final FileChannel channel;
+	private final long size;
+	private final int chunkSize;
+	/** The file offset of the current chunk. */
+	private long chunkStart;
+	private MappedByteBuffer chunk;
+	private long mark;
+
+	/**
+	 * @param p_channel
+	 *            The channel of the file to read.
+	 * @param p_size
+	 *            The number of bytes to read.
+	 * @throws IOException
+	 *             If the mapping fails.
+	 */
+	MappedInputStream(FileChannel p_channel, long p_size) throws IOException {
+		this(p_channel, p_size, CHUNK_SIZE);
+	}
+
+	/**
+	 * @param p_channel
+	 *            The channel of the file to read.
+	 * @param p_size
+	 *            The number of bytes to read.
+	 * @param p_chunkSize
+	 *            The size of one mapped chunk. (Smaller than
+	 *            {@link #CHUNK_SIZE} for tests.)
+	 * @throws IOException
+	 *             If the mapping fails.
+	 */
+	MappedInputStream(FileChannel p_channel, long p_size, int p_chunkSize) throws IOException {
+		this.channel = p_channel;
+		this.size = p_size;
+		this.chunkSize = p_chunkSize;
+		map(0);
+	}
+
+	/**
+	 * @return The number of bytes read so far.
+	 */
+	long position() {
+		return this.chunkStart + this.chunk.position();
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!ensureRemaining()) return -1;
+		return this.chunk.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) return 0;
+		if (!ensureRemaining()) return -1;
+		int n = Math.min(len, this.chunk.remaining());
+		this.chunk.get(b, off, n);
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long target = Math.min(this.size, position() + Math.max(0, n));
+		long skipped = target - position();
+		seek(target);
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return (int) Math.min(Integer.MAX_VALUE, this.size - position());
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		this.mark = position();
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		seek(this.mark);
+	}
+
+	/**
+	 * @return Whether there are bytes left. Maps the next chunk if necessary.
+	 */
+	private boolean ensureRemaining() throws IOException {
+		if (this.chunk.hasRemaining()) return true;
+		long next = this.chunkStart + this.chunk.limit();
+		if (next >= this.size) return false;
+		map(next);
+		return true;
+	}
+
+	private void seek(long position) throws IOException {
+		if (position < this.chunkStart || position > this.chunkStart + this.chunk.limit()) {
+			map(position);
+		}
+		else {
+			//Through Buffer, as the covariant override doesn't exist on Java 8.
+			((Buffer) this.chunk).position((int) (position - this.chunkStart));
+		}
+	}
+
+	private void map(long start) throws IOException {
+		this.chunkStart = start;
+		this.chunk = this.channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(this.chunkSize, this.size - start));
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.DataManager;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.function.Consumer;
+
+/**
+ * A hashed timer wheel for the expiry of keys. The deadlines are hashed by
+ * their tick into a fixed number of slots. Advancing the wheel only looks at
+ * the slots of the ticks that passed, so expiring keys never needs a scan of
+ * all keys. Keys with a deadline more than one rotation away stay in their
+ * slot until their round comes.
+ * 
+ * The times are {@link System#nanoTime()} values.
+ * 
+ * This is not thread safe.
+ * 
+ * @author Tim Neumann
+ * @param <K>
+ *            The type of the keys.
+ */
+final class TimerWheel<K> {
+	private final long tickNanos;
+	private final HashMap<K, Long>[] slots;
+	/** The deadline of every scheduled key. */
+	private final HashMap<K, Long> deadlines = new HashMap<>();
+	/** The last tick that was processed. Ticks are processed once they are over. */
+	private long currentTick;
+
+	/**
+	 * @param p_tickNanos
+	 *            The length of one tick.
+	 * @param slotCount
+	 *            The number of slots.
+	 * @param now
+	 *            The current time.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	TimerWheel(long p_tickNanos, int slotCount, long now) {
+		this.tickNanos = p_tickNanos;
+		this.slots = new HashMap[slotCount];
+		for (int i = 0; i < slotCount; i++) {
+			this.slots[i] = new HashMap<>();
+		}
+		this.currentTick = Math.floorDiv(now, p_tickNanos) - 1;
+	}
+
+	/**
+	 * Schedules the expiry of a key. A earlier deadline of the key is
+	 * replaced.
+	 * 
+	 * @param key
+	 *            The key.
+	 * @param deadline
+	 *            When the key expires.
+	 */
+	void schedule(K key, long deadline) {
+		cancel(key);
+		Long deadlineL = Long.valueOf(deadline);
+		this.deadlines.put(key, deadlineL);
+		//Deadlines in ticks, that are already processed, are handled with the next tick.
+		long tick = Math.max(Math.floorDiv(deadline, this.tickNanos), this.currentTick + 1);
+		slot(tick).put(key, deadlineL);
+	}
+
+	/**
+	 * Removes the deadline of a key.
+	 * 
+	 * @param key
+	 *            The key.
+	 */
+	void cancel(K key) {
+		Long deadline = this.deadlines.remove(key);
+		if (deadline == null) return;
+		//If the tick of the deadline is processed already, the key would have expired. So this is the same slot as in schedule.
+		long tick = Math.max(Math.floorDiv(deadline.longValue(), this.tickNanos), this.currentTick + 1);
+		slot(tick).remove(key);
+	}
+
+	/**
+	 * @param key
+	 *            The key.
+	 * @param now
+	 *            The current time.
+	 * @return Whether the deadline of the key passed.
+	 */
+	boolean isExpired(K key, long now) {
+		Long deadline = this.deadlines.get(key);
+		return deadline != null && deadline.longValue() - now <= 0;
+	}
+
+	/**
+	 * Processes all ticks that are over at the given time.
+	 * 
+	 * @param now
+	 *            The current time.
+	 * @param expired
+	 *            Called with every key whose deadline passed. The key is
+	 *            already removed from the wheel.
+	 */
+	void advance(long now, Consumer<K> expired) {
+		long target = Math.floorDiv(now, this.tickNanos) - 1;
+		//After a full rotation all slots have been looked at.
+		long last = Math.min(target, this.currentTick + this.slots.length);
+		for (long tick = this.currentTick + 1; tick <= last; tick++) {
+			Iterator<Entry<K, Long>> it = slot(tick).entrySet().iterator();
+			while (it.hasNext()) {
+				Entry<K, Long> e = it.next();
+				if (e.getValue().longValue() - now <= 0) {
+					it.remove();
+					this.deadlines.remove(e.getKey());
+					expired.accept(e.getKey());
+				}
+			}
+		}
+		this.currentTick = Math.max(this.currentTick, target);
+	}
+
+	/**
+	 * Removes all deadlines.
+	 */
+	void clear() {
+		this.deadlines.clear();
+		for (HashMap<K, Long> slot : this.slots) {
+			slot.clear();
+		}
+	}
+
+	private HashMap<K, Long> slot(long tick) {
+		return this.slots[(int) Math.floorMod(tick, (long) this.slots.length)];
+	}
+}
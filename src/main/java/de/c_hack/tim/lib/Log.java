@@ -14,11 +14,12 @@
 package de.c_hack.tim.lib;
 
 import java.io.*;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A automated logger.
@@ -32,6 +33,10 @@ import java.util.Map.Entry;
  * 
  * It can be set to absorb stderr, but not if logging to stderr is enabled.
  * 
+ * With {@link #enableBuffering(int, long, boolean)} threads don't write to the
+ * files themselves, but to their own buffer. A background thread then writes
+ * the buffered lines.
+ * 
  * @author Tim Neumann
  */
 public class Log {
@@ -58,12 +63,17 @@ public class Log {
      */
     private HashMap<String, LogFile> files;
 
-    /** The used date format. */
-    private SimpleDateFormat df = new SimpleDateFormat("EEE, dd.MM.yy HH:mm:ss");
+    /** The used date format. (Unlike SimpleDateFormat this is thread safe.) */
+    private DateTimeFormatter df = DateTimeFormatter.ofPattern("EEE, dd.MM.yy HH:mm:ss");
 
     /** The highest log level to log to stderr instead of stdout. */
     private int levelToStdErr = -1;
 
+    /** The per thread buffers or null, if buffering is off. */
+    private volatile LogBuffers buffers;
+    /** Writes the buffered lines on shutdown or null, if buffering is off. */
+    private Thread shutdownHook;
+
     /**
      * Creates a new logger. Without logging to stderr, only to stdout.
      * 
@@ -200,7 +210,7 @@ public class Log {
             break;
         }
 
-        msg += "<" + this.df.format(new Date()) + "> ";
+        msg += "<" + this.df.format(LocalDateTime.now()) + "> ";
         msg += e.toString();
         msg += System.getProperty("line.separator");
 
@@ -253,7 +263,7 @@ public class Log {
             break;
         }
 
-        msg += "<" + this.df.format(new Date()) + "> ";
+        msg += "<" + this.df.format(LocalDateTime.now()) + "> ";
         msg += message;
         msg += System.getProperty("line.separator");
 
@@ -261,7 +271,74 @@ public class Log {
 
     }
 
+    /**
+     * Switches to buffered logging. Each thread then appends its lines to its
+     * own buffer and a single background thread writes the lines of all
+     * buffers to the files. So logging threads don't block each other.
+     * 
+     * The lines in the buffers are written regularly, when a buffer is full,
+     * on {@link #flush()} and on shutdown. The lines of a thread that ended
+     * are written with the next regular write.
+     * 
+     * @param par_bufferLines
+     *            The maximum number of lines buffered per thread. A thread
+     *            with a full buffer waits until it was written.
+     * @param par_interval
+     *            The time between two regular writes in milliseconds.
+     * @param par_timestampOrder
+     *            Whether to sort the lines of all threads by the time they
+     *            were logged. (The lines of each write are sorted. A line can
+     *            still be written after a later line of another thread, if
+     *            it was only added to the buffer after that was written.)
+     *            Otherwise the lines of each thread are written together.
+     */
+    public synchronized void enableBuffering(int par_bufferLines, long par_interval, boolean par_timestampOrder) {
+        if (par_bufferLines < 1) throw new IllegalArgumentException("The buffer needs room for at least one line.");
+        if (par_interval < 1) throw new IllegalArgumentException("The interval must be positive.");
+        disableBuffering();
+        LogBuffers newBuffers = new LogBuffers(par_bufferLines, TimeUnit.MILLISECONDS.toNanos(par_interval), par_timestampOrder, (s, level) -> writeString(s, level, false), this::flushFiles, this::logDropped);
+        this.shutdownHook = new Thread(newBuffers::drain, "Log shutdown");
+        Runtime.getRuntime().addShutdownHook(this.shutdownHook);
+        this.buffers = newBuffers;
+    }
+
+    /**
+     * Switches back to unbuffered logging. All buffered lines are written
+     * before this returns.
+     */
+    public synchronized void disableBuffering() {
+        LogBuffers oldBuffers = this.buffers;
+        if (oldBuffers == null) return;
+        this.buffers = null;
+        oldBuffers.stop();
+        try {
+            Runtime.getRuntime().removeShutdownHook(this.shutdownHook);
+        } catch (IllegalStateException e) {
+            //Already shutting down.
+        }
+        this.shutdownHook = null;
+    }
+
+    /**
+     * Writes all buffered lines. Without buffering this does nothing.
+     */
+    public void flush() {
+        LogBuffers current = this.buffers;
+        if (current != null) {
+            current.drain();
+        }
+    }
+
     private void logString(String s, int level) {
+        LogBuffers current = this.buffers;
+        if (current != null) {
+            current.append(s, level);
+        } else {
+            writeString(s, level, true);
+        }
+    }
+
+    private void writeString(String s, int level, boolean flush) {
         Iterator<Entry<String, LogFile>> it = this.files.entrySet().iterator();
 
         while (it.hasNext()) {
@@ -282,7 +359,9 @@ public class Log {
 
             try {
                 pair.getValue().getbW().write(s);
-                pair.getValue().getbW().flush();
+                if (flush) {
+                    pair.getValue().getbW().flush();
+                }
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -290,6 +369,39 @@ public class Log {
         }
     }
 
+    /**
+     * Reports that buffered lines were dropped, because writing them failed.
+     * This is written directly, as it is called while the buffers are drained.
+     */
+    private void logDropped(RuntimeException e, int lines) {
+        String msg = "[ERROR]<" + this.df.format(LocalDateTime.now()) + "> ";
+        msg += "Dropped " + lines + " buffered log lines, because writing them failed: " + e.toString();
+        msg += System.getProperty("line.separator");
+
+        for (StackTraceElement el : e.getStackTrace()) {
+            msg = msg + "   " + el.toString() + System.getProperty("line.separator");
+        }
+
+        try {
+            writeString(msg, Log.ERROR, true);
+        } catch (RuntimeException e2) {
+            //Writing is still broken, so this is dropped too.
+        }
+    }
+
+    private void flushFiles() {
+        for (LogFile file : this.files.values()) {
+            if (file.getbW() == null) {
+                continue;
+            }
+            try {
+                file.getbW().flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     /**
      * Put's the file to the log with specified log level. See {@link #files
      * files}
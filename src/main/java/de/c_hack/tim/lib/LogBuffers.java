@@ -0,0 +1,265 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Buffers log lines per thread for {@link Log#enableBuffering(int, long, boolean)}.
+ * 
+ * Every thread appends its lines to its own bounded ring buffer. Only that
+ * thread writes to the buffer and only the drainer reads from it, so
+ * logging threads never wait for each other. A single drainer thread
+ * regularly moves the lines of all buffers to the sink, either in the order
+ * they were logged or buffer by buffer.
+ * 
+ * When a thread's buffer is full, the thread wakes the drainer and waits for
+ * space. The buffers of threads that ended are drained and then removed.
+ * 
+ * If the sink fails, the remaining lines of that drain are dropped, so that
+ * the buffers still get empty, and the failure is reported once per drain.
+ * 
+ * @author Tim Neumann
+ */
+class LogBuffers {
+	private final int capacity;
+	private final long intervalNanos;
+	private final boolean timestampOrder;
+	/** Writes a line with a level. */
+	private final ObjIntConsumer<String> sink;
+	/** Flushes the sink after a drain. */
+	private final Runnable sinkFlush;
+	/** Reports a failure of the sink with the number of dropped lines. */
+	private final ObjIntConsumer<RuntimeException> sinkFailure;
+
+	private final ThreadLocal<Buffer> ownBuffer = new ThreadLocal<>();
+	private final CopyOnWriteArrayList<Buffer> buffers = new CopyOnWriteArrayList<>();
+	/** Held while draining, so that there is only one reader per buffer. */
+	private final ReentrantLock drainLock = new ReentrantLock();
+	private final Thread drainer;
+	private volatile boolean running = true;
+
+	/**
+	 * Creates the buffers and starts the drainer.
+	 * 
+	 * @param p_capacity
+	 *            The maximum number of lines per thread.
+	 * @param p_intervalNanos
+	 *            The time between two drains.
+	 * @param p_timestampOrder
+	 *            Whether to write the lines of all threads in the order they
+	 *            were logged.
+	 * @param p_sink
+	 *            Writes a line with a level.
+	 * @param p_sinkFlush
+	 *            Flushes the sink after a drain.
+	 * @param p_sinkFailure
+	 *            Reports a failure of the sink or the flush with the number
+	 *            of lines dropped because of it. Called while draining, so it
+	 *            must not append lines to these buffers.
+	 */
+	LogBuffers(int p_capacity, long p_intervalNanos, boolean p_timestampOrder, ObjIntConsumer<String> p_sink, Runnable p_sinkFlush, ObjIntConsumer<RuntimeException> p_sinkFailure) {
+		this.capacity = p_capacity;
+		this.intervalNanos = p_intervalNanos;
+		this.timestampOrder = p_timestampOrder;
+		this.sink = p_sink;
+		this.sinkFlush = p_sinkFlush;
+		this.sinkFailure = p_sinkFailure;
+		this.drainer = Platform.backgroundThreads("Log drainer").newThread(this::run);
+		this.drainer.start();
+	}
+
+	/**
+	 * Appends a line to the buffer of the current thread.
+	 * 
+	 * @param line
+	 *            The formatted line.
+	 * @param level
+	 *            The level of the line.
+	 */
+	void append(String line, int level) {
+		Buffer buffer = this.ownBuffer.get();
+		if (buffer == null) {
+			buffer = new Buffer(Thread.currentThread(), this.capacity);
+			this.ownBuffer.set(buffer);
+			this.buffers.add(buffer);
+		}
+
+		long tail = buffer.tail.get();
+		while (tail - buffer.head.get() >= this.capacity) {
+			if (!this.running) {
+				drain();
+			}
+			else {
+				LockSupport.unpark(this.drainer);
+				LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+			}
+		}
+		int slot = (int) (tail % this.capacity);
+		buffer.lines[slot] = line;
+		buffer.levels[slot] = level;
+		buffer.times[slot] = System.nanoTime();
+		buffer.tail.lazySet(tail + 1);
+
+		//The drainer might have stopped before the line was added.
+		if (!this.running) {
+			drain();
+		}
+	}
+
+	/**
+	 * Writes all buffered lines to the sink.
+	 */
+	void drain() {
+		this.drainLock.lock();
+		try {
+			Sink out = new Sink();
+			List<Line> lines = this.timestampOrder ? new ArrayList<>() : null;
+			for (Buffer buffer : this.buffers) {
+				//Check before reading, so that no line added before the end of the thread is missed.
+				boolean ended = !buffer.owner.isAlive();
+				long head = buffer.head.get();
+				long tail = buffer.tail.get();
+				for (long i = head; i < tail; i++) {
+					int slot = (int) (i % this.capacity);
+					if (lines != null) {
+						lines.add(new Line(buffer.lines[slot], buffer.levels[slot], buffer.times[slot]));
+					}
+					else {
+						out.write(buffer.lines[slot], buffer.levels[slot]);
+					}
+					buffer.lines[slot] = null;
+				}
+				buffer.head.lazySet(tail);
+				if (ended) {
+					this.buffers.remove(buffer);
+				}
+			}
+			if (lines != null) {
+				//Stable, so lines with the same time stay in the order of their thread.
+				lines.sort((a, b) -> Long.compare(a.time - b.time, 0));
+				for (Line line : lines) {
+					out.write(line.line, line.level);
+				}
+			}
+			out.flush();
+		} finally {
+			this.drainLock.unlock();
+		}
+	}
+
+	/**
+	 * Stops the drainer and writes all remaining lines.
+	 */
+	void stop() {
+		this.running = false;
+		LockSupport.unpark(this.drainer);
+		try {
+			this.drainer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		drain();
+	}
+
+	/**
+	 * Run by the drainer.
+	 */
+	private void run() {
+		while (this.running) {
+			drain();
+			LockSupport.parkNanos(this.intervalNanos);
+		}
+	}
+
+	/**
+	 * Writes the lines of one drain to the sink. After the first failure the
+	 * remaining lines are only counted.
+	 */
+	private final class Sink {
+		private RuntimeException failure;
+		private int dropped;
+
+		void write(String line, int level) {
+			if (this.failure == null) {
+				try {
+					LogBuffers.this.sink.accept(line, level);
+					return;
+				} catch (RuntimeException e) {
+					this.failure = e;
+				}
+			}
+			this.dropped++;
+		}
+
+		/**
+		 * Flushes the sink and reports a failure.
+		 */
+		void flush() {
+			if (this.failure == null) {
+				try {
+					LogBuffers.this.sinkFlush.run();
+				} catch (RuntimeException e) {
+					this.failure = e;
+				}
+			}
+			if (this.failure != null) {
+				LogBuffers.this.sinkFailure.accept(this.failure, this.dropped);
+			}
+		}
+	}
+
+	/**
+	 * The ring buffer of one thread.
+	 */
+	private static final class Buffer {
+		final Thread owner;
+		final String[] lines;
+		final int[] levels;
+		final long[] times;
+		/** The number of lines read. Only written by the drainer. */
+		final AtomicLong head = new AtomicLong();
+		/** The number of lines written. Only written by the owner. */
+		final AtomicLong tail = new AtomicLong();
+
+		Buffer(Thread p_owner, int capacity) {
+			this.owner = p_owner;
+			this.lines = new String[capacity];
+			this.levels = new int[capacity];
+			this.times = new long[capacity];
+		}
+	}
+
+	/**
+	 * A line taken from a buffer.
+	 */
+	private static final class Line {
+		final String line;
+		final int level;
+		final long time;
+
+		Line(String p_line, int p_level, long p_time) {
+			this.line = p_line;
+			this.level = p_level;
+			this.time = p_time;
+		}
+	}
+}
@@ -13,12 +13,22 @@
  */
 package de.c_hack.tim.lib;
 
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
 /**
  * A collection of useful functions
  * 
  * @author Tim Neumann
  */
 public class Misc {
+	/**
+	 * The minimum array length for which
+	 * {@link #findStringInArrParallel(String[], String, boolean)} searches in
+	 * parallel.
+	 */
+	public static final int PARALLEL_THRESHOLD = 1 << 16;
+
 	/**
 	 * Finds a string in a string array.
 	 * Only matches complete elements.
@@ -36,7 +46,11 @@ public class Misc {
 
 	/**
 	 * Finds a string in a string array.
-	 * Only matches complete elements
+	 * Only matches complete elements.
+	 * Case insensitive matching follows {@link String#equalsIgnoreCase(String)}
+	 * and doesn't create any objects.
+	 * 
+	 * For repeated searches in the same array use a {@link StringArrayIndex}.
 	 * 
 	 * @param haystack
 	 *            The array to search in
@@ -47,20 +61,75 @@ public class Misc {
 	 * @return Where the needle was found or -1 if not found.
 	 */
 	public static int findStringInArr(String[] haystack, String needle, boolean caseSensitive) {
-		String needleR = needle;
-		if (!caseSensitive) {
-			needleR = needle.toLowerCase();
-		}
 		for (int i = 0; i < haystack.length; i++) {
 
 			String hay = haystack[i];
 
-			if (!caseSensitive) {
-				hay = hay.toLowerCase();
-			}
-
-			if (hay.equals(needleR)) return (i);
+			if (caseSensitive ? hay.equals(needle) : hay.equalsIgnoreCase(needle)) return (i);
 		}
 		return (-1);
 	}
+
+	/**
+	 * Finds multiple strings in a string array in one pass.
+	 * Only matches complete elements.
+	 * 
+	 * @param haystack
+	 *            The array to search in
+	 * @param needles
+	 *            The strings to search
+	 * @param caseSensitive
+	 *            Whether case matters
+	 * @return For each needle where it was found or -1 if not found. (The same
+	 *         as {@link #findStringInArr(String[], String, boolean)} would
+	 *         return for each needle.)
+	 */
+	public static int[] findStringsInArr(String[] haystack, String[] needles, boolean caseSensitive) {
+		int[] ret = new int[needles.length];
+		Arrays.fill(ret, -1);
+		StringArrayIndex needleIndex = new StringArrayIndex(needles);
+
+		//First find the first occurence for the first of equal needles.
+		int missing = 0;
+		for (int i = 0; i < needles.length; i++) {
+			if (needleIndex.find(needles[i], caseSensitive) == i) {
+				missing++;
+			}
+		}
+		for (int i = 0; i < haystack.length && missing > 0; i++) {
+			int needle = needleIndex.find(haystack[i], caseSensitive);
+			if (needle >= 0 && ret[needle] == -1) {
+				ret[needle] = i;
+				missing--;
+			}
+		}
+		//Then copy it for the others.
+		for (int i = 0; i < needles.length; i++) {
+			int first = needleIndex.find(needles[i], caseSensitive);
+			if (first >= 0) {
+				ret[i] = ret[first];
+			}
+		}
+		return (ret);
+	}
+
+	/**
+	 * Finds a string in a string array.
+	 * Only matches complete elements.
+	 * 
+	 * Arrays with at least {@link #PARALLEL_THRESHOLD} elements are searched
+	 * in parallel on the common fork join pool.
+	 * 
+	 * @param haystack
+	 *            The array to search in
+	 * @param needle
+	 *            The string to search
+	 * @param caseSensitive
+	 *            Whether case matters
+	 * @return Where the needle was found first or -1 if not found.
+	 */
+	public static int findStringInArrParallel(String[] haystack, String needle, boolean caseSensitive) {
+		if (haystack.length < PARALLEL_THRESHOLD) return (findStringInArr(haystack, needle, caseSensitive));
+		return (IntStream.range(0, haystack.length).parallel().filter(i -> caseSensitive ? haystack[i].equals(needle) : haystack[i].equalsIgnoreCase(needle)).findFirst().orElse(-1));
+	}
 }
@@ -0,0 +1,66 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to features of newer Java versions. It is used by all packages of
+ * this library and is part of its API: the methods stay the same, only what
+ * they create may differ between Java versions.
+ * 
+ * This is the Java 8 version. The jar is a multi-release jar, that contains
+ * a version for Java 21 and newer in {@code META-INF/versions/21}
+ * (source in {@code src/main/java21}). Both versions must have the same
+ * public methods.
+ * 
+ * @author Tim Neumann
+ */
+public final class Platform {
+
+	private Platform() {
+		//Only static methods.
+	}
+
+	/**
+	 * Creates a thread factory for long running background threads, like the
+	 * saver of a DataHandler. These are daemon platform threads on all
+	 * versions. Their work waits for I/O while holding monitors, which would
+	 * pin a virtual thread to its carrier thread.
+	 * 
+	 * @param name
+	 *            The name of the threads.
+	 * @return The thread factory.
+	 */
+	public static ThreadFactory backgroundThreads(String name) {
+		return r -> {
+			Thread t = new Thread(r, name);
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
+	/**
+	 * Creates a thread factory for short tasks that may wait, like handing
+	 * changes to a subscription with a full buffer. On Java 8 these are daemon
+	 * threads. On Java 21 and newer they are virtual threads.
+	 * 
+	 * @param name
+	 *            The name of the threads.
+	 * @return The thread factory.
+	 */
+	public static ThreadFactory taskThreads(String name) {
+		return backgroundThreads(name);
+	}
+}
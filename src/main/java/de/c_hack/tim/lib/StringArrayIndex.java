@@ -0,0 +1,154 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib;
+
+/**
+ * A index of a string array for fast repeated lookups.
+ * It finds the same element as {@link Misc#findStringInArr(String[], String, boolean)}
+ * (the first matching one), but in constant time.
+ * 
+ * The index is built once from the array. Later changes of the array are not
+ * reflected.
+ * 
+ * Case insensitive lookups use the rules of
+ * {@link String#equalsIgnoreCase(String)} and don't create any objects.
+ * 
+ * @author Tim Neumann
+ */
+public final class StringArrayIndex {
+	/** The strings in the case sensitive table. null for empty slots. */
+	private final String[] exactKeys;
+	/** The array indexes of the strings in the case sensitive table. */
+	private final int[] exactIndexes;
+	/** The strings in the case insensitive table. null for empty slots. */
+	private final String[] foldedKeys;
+	/** The array indexes of the strings in the case insensitive table. */
+	private final int[] foldedIndexes;
+	/** The number of slots of both tables minus one. */
+	private final int mask;
+
+	/**
+	 * Builds the index for the given array.
+	 * 
+	 * @param haystack
+	 *            The array to index. null elements are never found.
+	 */
+	public StringArrayIndex(String[] haystack) {
+		int capacity = Integer.highestOneBit(Math.max(2, haystack.length) * 2 - 1) << 1;
+		this.mask = capacity - 1;
+		this.exactKeys = new String[capacity];
+		this.exactIndexes = new int[capacity];
+		this.foldedKeys = new String[capacity];
+		this.foldedIndexes = new int[capacity];
+
+		for (int i = 0; i < haystack.length; i++) {
+			String hay = haystack[i];
+			if (hay == null) {
+				continue;
+			}
+			//Only the first occurence is put into the tables.
+			int slot = spread(hay.hashCode()) & this.mask;
+			while (this.exactKeys[slot] != null && !this.exactKeys[slot].equals(hay)) {
+				slot = (slot + 1) & this.mask;
+			}
+			if (this.exactKeys[slot] == null) {
+				this.exactKeys[slot] = hay;
+				this.exactIndexes[slot] = i;
+			}
+
+			slot = spread(foldedHash(hay)) & this.mask;
+			while (this.foldedKeys[slot] != null && !this.foldedKeys[slot].equalsIgnoreCase(hay)) {
+				slot = (slot + 1) & this.mask;
+			}
+			if (this.foldedKeys[slot] == null) {
+				this.foldedKeys[slot] = hay;
+				this.foldedIndexes[slot] = i;
+			}
+		}
+	}
+
+	/**
+	 * Finds a string in the indexed array.
+	 * Only matches complete elements.
+	 * Case sensitive.
+	 * 
+	 * @param needle
+	 *            The string to search
+	 * @return Where the needle was found first or -1 if not found.
+	 */
+	public int find(String needle) {
+		return find(needle, true);
+	}
+
+	/**
+	 * Finds a string in the indexed array.
+	 * Only matches complete elements.
+	 * 
+	 * @param needle
+	 *            The string to search
+	 * @param caseSensitive
+	 *            Whether case matters
+	 * @return Where the needle was found first or -1 if not found.
+	 */
+	public int find(String needle, boolean caseSensitive) {
+		if (needle == null) return -1;
+		if (caseSensitive) {
+			for (int slot = spread(needle.hashCode()) & this.mask; this.exactKeys[slot] != null; slot = (slot + 1) & this.mask) {
+				if (this.exactKeys[slot].equals(needle)) return this.exactIndexes[slot];
+			}
+		}
+		else {
+			for (int slot = spread(foldedHash(needle)) & this.mask; this.foldedKeys[slot] != null; slot = (slot + 1) & this.mask) {
+				if (this.foldedKeys[slot].equalsIgnoreCase(needle)) return this.foldedIndexes[slot];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Calculates a hash code, that is equal for all strings that are equal
+	 * ignoring case.
+	 * 
+	 * @param s
+	 *            The string.
+	 * @return The hash code.
+	 */
+	static int foldedHash(String s) {
+		int h = 0;
+		for (int i = 0; i < s.length(); i++) {
+			h = 31 * h + fold(s.charAt(i));
+		}
+		return h;
+	}
+
+	/**
+	 * Spreads the higher bits of a hash code to the lower ones, as only the
+	 * lower bits are used for the slot.
+	 */
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Folds the case of a char the same way as
+	 * {@link String#regionMatches(boolean, int, String, int, int)}.
+	 * 
+	 * @param c
+	 *            The char.
+	 * @return The folded char.
+	 */
+	static char fold(char c) {
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+}
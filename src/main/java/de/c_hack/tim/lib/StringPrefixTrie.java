@@ -0,0 +1,225 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * A trie of the elements of a string array for prefix searches.
+ * The trie is built from the case folded strings, so that it can be used
+ * both for case sensitive and case insensitive searches. Case insensitive
+ * matching follows {@link String#regionMatches(boolean, int, String, int, int)}.
+ * 
+ * The trie is built once from the array. Later changes of the array are not
+ * reflected.
+ * 
+ * @author Tim Neumann
+ */
+public final class StringPrefixTrie {
+	/** The indexed strings. */
+	private final String[] strings;
+	private final Node root = new Node();
+
+	/**
+	 * Builds the trie for the given array.
+	 * 
+	 * @param haystack
+	 *            The array to index. null elements are never found.
+	 */
+	public StringPrefixTrie(String[] haystack) {
+		this.strings = haystack.clone();
+		for (int i = 0; i < this.strings.length; i++) {
+			String hay = this.strings[i];
+			if (hay == null) {
+				continue;
+			}
+			Node node = this.root;
+			node.setFirst(i);
+			for (int j = 0; j < hay.length(); j++) {
+				node = node.getOrAddChild(StringArrayIndex.fold(hay.charAt(j)));
+				node.setFirst(i);
+			}
+			node.addEnd(i);
+		}
+	}
+
+	/**
+	 * Finds the first element starting with the given prefix.
+	 * 
+	 * @param prefix
+	 *            The prefix to search
+	 * @param caseSensitive
+	 *            Whether case matters
+	 * @return Where the first element with the prefix was found or -1 if
+	 *         none was found.
+	 */
+	public int findFirstStartingWith(String prefix, boolean caseSensitive) {
+		if (!caseSensitive) {
+			Node node = walk(prefix);
+			return node == null || node.first == Integer.MAX_VALUE ? -1 : node.first;
+		}
+		int[] all = findAllStartingWith(prefix, true);
+		return all.length == 0 ? -1 : all[0];
+	}
+
+	/**
+	 * Finds all elements starting with the given prefix.
+	 * 
+	 * @param prefix
+	 *            The prefix to search
+	 * @param caseSensitive
+	 *            Whether case matters
+	 * @return The indexes of the elements with the prefix in ascending order.
+	 */
+	public int[] findAllStartingWith(String prefix, boolean caseSensitive) {
+		Node node = walk(prefix);
+		if (node == null) return new int[0];
+		IntList found = new IntList();
+		collect(node, found);
+		if (caseSensitive) {
+			found.retain(i -> this.strings[i].startsWith(prefix));
+		}
+		return found.toSortedArray();
+	}
+
+	/**
+	 * Finds all elements, that are a prefix of the given string.
+	 * 
+	 * @param s
+	 *            The string to search the prefixes of
+	 * @param caseSensitive
+	 *            Whether case matters
+	 * @return The indexes of the elements, that are a prefix of the string, in
+	 *         ascending order.
+	 */
+	public int[] findAllPrefixesOf(String s, boolean caseSensitive) {
+		IntList found = new IntList();
+		Node node = this.root;
+		found.addAll(node.ends, node.endCount);
+		for (int i = 0; i < s.length() && node != null; i++) {
+			node = node.getChild(StringArrayIndex.fold(s.charAt(i)));
+			if (node != null) {
+				found.addAll(node.ends, node.endCount);
+			}
+		}
+		if (caseSensitive) {
+			found.retain(i -> s.startsWith(this.strings[i]));
+		}
+		return found.toSortedArray();
+	}
+
+	/**
+	 * @return The node for the given prefix or null, if no element starts
+	 *         with it.
+	 */
+	private Node walk(String prefix) {
+		Node node = this.root;
+		for (int i = 0; i < prefix.length() && node != null; i++) {
+			node = node.getChild(StringArrayIndex.fold(prefix.charAt(i)));
+		}
+		return node;
+	}
+
+	/**
+	 * Adds the indexes of all elements in the subtree of the given node.
+	 */
+	private static void collect(Node node, IntList found) {
+		found.addAll(node.ends, node.endCount);
+		for (int i = 0; i < node.childCount; i++) {
+			collect(node.children[i], found);
+		}
+	}
+
+	/**
+	 * A node of the trie.
+	 */
+	private static final class Node {
+		/** The folded chars of the children in ascending order. */
+		private char[] keys = new char[0];
+		private Node[] children = new Node[0];
+		private int childCount;
+		/** The smallest index of the elements in the subtree. */
+		private int first = Integer.MAX_VALUE;
+		/** The indexes of the elements ending here. */
+		private int[] ends = new int[0];
+		private int endCount;
+
+		Node getChild(char c) {
+			int pos = Arrays.binarySearch(this.keys, 0, this.childCount, c);
+			return pos >= 0 ? this.children[pos] : null;
+		}
+
+		Node getOrAddChild(char c) {
+			int pos = Arrays.binarySearch(this.keys, 0, this.childCount, c);
+			if (pos >= 0) return this.children[pos];
+			pos = -pos - 1;
+			if (this.childCount == this.keys.length) {
+				int capacity = Math.max(2, this.childCount * 2);
+				this.keys = Arrays.copyOf(this.keys, capacity);
+				this.children = Arrays.copyOf(this.children, capacity);
+			}
+			System.arraycopy(this.keys, pos, this.keys, pos + 1, this.childCount - pos);
+			System.arraycopy(this.children, pos, this.children, pos + 1, this.childCount - pos);
+			Node child = new Node();
+			this.keys[pos] = c;
+			this.children[pos] = child;
+			this.childCount++;
+			return child;
+		}
+
+		void setFirst(int index) {
+			this.first = Math.min(this.first, index);
+		}
+
+		void addEnd(int index) {
+			if (this.endCount == this.ends.length) {
+				this.ends = Arrays.copyOf(this.ends, Math.max(1, this.endCount * 2));
+			}
+			this.ends[this.endCount++] = index;
+		}
+	}
+
+	/**
+	 * A growing list of ints.
+	 */
+	private static final class IntList {
+		private int[] values = new int[8];
+		private int size;
+
+		void addAll(int[] toAdd, int count) {
+			if (this.size + count > this.values.length) {
+				this.values = Arrays.copyOf(this.values, Math.max(this.values.length * 2, this.size + count));
+			}
+			System.arraycopy(toAdd, 0, this.values, this.size, count);
+			this.size += count;
+		}
+
+		void retain(IntPredicate filter) {
+			int kept = 0;
+			for (int i = 0; i < this.size; i++) {
+				if (filter.test(this.values[i])) {
+					this.values[kept++] = this.values[i];
+				}
+			}
+			this.size = kept;
+		}
+
+		int[] toSortedArray() {
+			int[] ret = Arrays.copyOf(this.values, this.size);
+			Arrays.sort(ret);
+			return ret;
+		}
+	}
+}
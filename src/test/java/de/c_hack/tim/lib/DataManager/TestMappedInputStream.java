@@ -0,0 +1,148 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @version 0.2.0
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib.DataManager;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testing the MappedInputStream class with small chunks, so that reads,
+ * seeks and resets cross the chunk boundaries.
+ * 
+ * @author Tim Neumann
+ */
+public class TestMappedInputStream {
+
+	private static final int CHUNK = 16;
+	private static final int SIZE = 100;
+
+	private Path file;
+	private FileChannel channel;
+
+	/**
+	 * Creates a file containing the bytes 0 to 99.
+	 * 
+	 * @throws IOException
+	 *             When the file can't be created.
+	 */
+	@BeforeEach
+	public void createFile() throws IOException {
+		this.file = Files.createTempFile("TestMappedInputStream", ".dat");
+		byte[] content = new byte[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			content[i] = (byte) i;
+		}
+		Files.write(this.file, content);
+		this.channel = FileChannel.open(this.file, StandardOpenOption.READ);
+	}
+
+	/**
+	 * Deletes the file.
+	 * 
+	 * @throws IOException
+	 *             When the file can't be deleted.
+	 */
+	@AfterEach
+	public void deleteFile() throws IOException {
+		this.channel.close();
+		Files.delete(this.file);
+	}
+
+	/**
+	 * Tests reading single bytes and arrays across the chunks.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testRead() throws Exception {
+		MappedInputStream in = new MappedInputStream(this.channel, SIZE, CHUNK);
+		for (int i = 0; i < 10; i++) {
+			Assertions.assertEquals(i, in.read(), "Single byte");
+		}
+		byte[] buf = new byte[SIZE];
+		int done = 10;
+		while (done < SIZE) {
+			int n = in.read(buf, done, SIZE - done);
+			Assertions.assertTrue(n > 0 && n <= CHUNK, "Read within one chunk");
+			done += n;
+		}
+		for (int i = 10; i < SIZE; i++) {
+			Assertions.assertEquals(i, buf[i], "Byte " + i);
+		}
+		Assertions.assertEquals(SIZE, in.position(), "Position at the end");
+		Assertions.assertEquals(-1, in.read(), "End of the file");
+		Assertions.assertEquals(-1, in.read(buf, 0, 1), "End of the file");
+	}
+
+	/**
+	 * Tests mark and reset across a chunk boundary in both directions and at
+	 * the boundary itself.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testMarkReset() throws Exception {
+		MappedInputStream in = new MappedInputStream(this.channel, SIZE, CHUNK);
+		in.skip(10);
+		in.mark(SIZE);
+		in.skip(20);
+		Assertions.assertEquals(30, in.read(), "After skipping into the next chunk");
+		in.reset();
+		Assertions.assertEquals(10, in.read(), "Reset into the previous chunk");
+
+		in.skip(2 * CHUNK - 11);
+		Assertions.assertEquals(2 * CHUNK, in.position(), "At the boundary");
+		in.mark(SIZE);
+		Assertions.assertEquals(2 * CHUNK, in.read(), "First byte of the chunk");
+		in.reset();
+		Assertions.assertEquals(2 * CHUNK, in.read(), "Reset to the boundary");
+
+		in.skip(CHUNK - 2);
+		in.mark(SIZE);
+		byte[] buf = new byte[4];
+		Assertions.assertEquals(1, in.read(buf, 0, 4), "Last byte of the chunk");
+		Assertions.assertEquals(4, in.read(buf, 0, 4), "Next chunk");
+		in.reset();
+		Assertions.assertEquals(3 * CHUNK - 1, in.read(), "Reset to the end of the previous chunk");
+	}
+
+	/**
+	 * Tests skipping to the boundaries and past the end.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testSkip() throws Exception {
+		MappedInputStream in = new MappedInputStream(this.channel, SIZE, CHUNK);
+		Assertions.assertEquals(CHUNK, in.skip(CHUNK), "Skipped to the boundary");
+		Assertions.assertEquals(CHUNK, in.read(), "After the boundary");
+		Assertions.assertEquals(SIZE - CHUNK - 1, in.available(), "Available");
+		Assertions.assertEquals(SIZE - CHUNK - 1, in.skip(SIZE), "Skipped to the end");
+		Assertions.assertEquals(0, in.available(), "Available at the end");
+		Assertions.assertEquals(-1, in.read(), "End of the file");
+		Assertions.assertEquals(0, in.skip(-5), "Negative skip");
+	}
+}
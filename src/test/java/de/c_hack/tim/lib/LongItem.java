@@ -0,0 +1,60 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @version 0.2.0
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib;
+
+import de.c_hack.tim.lib.DataManager.LongDataObject;
+
+/**
+ * A simple data object for the LongDataHandler tests.
+ * 
+ * @author Tim Neumann
+ */
+public class LongItem extends LongDataObject {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long id;
+	private final String value;
+
+	/**
+	 * @param p_id
+	 *            The primary ID.
+	 * @param p_value
+	 *            The value.
+	 */
+	public LongItem(long p_id, String p_value) {
+		this.id = p_id;
+		this.value = p_value;
+	}
+
+	@Override
+	public long getPrimaryLongID() {
+		return this.id;
+	}
+
+	/**
+	 * Get's {@link #value value}
+	 * 
+	 * @return value
+	 */
+	public String getValue() {
+		return this.value;
+	}
+
+	@Override
+	public LongItem clone() {
+		return new LongItem(this.id, this.value);
+	}
+}
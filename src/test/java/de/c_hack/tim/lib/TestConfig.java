@@ -0,0 +1,207 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @version 0.2.0
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ * 
+ */
+package de.c_hack.tim.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.c_hack.tim.lib.Config.WriteBack;
+
+/**
+ * Testing the snapshot and the writing of the Config class.
+ * 
+ * @author Tim Neumann
+ */
+public class TestConfig {
+
+	private Path dir;
+
+	/**
+	 * Creates the temporary directory for the config files.
+	 * 
+	 * @throws IOException
+	 *             When the directory can't be created.
+	 */
+	@BeforeEach
+	public void createDir() throws IOException {
+		this.dir = Files.createTempDirectory("TestConfig");
+	}
+
+	/**
+	 * Deletes the temporary directory.
+	 * 
+	 * @throws IOException
+	 *             When a file can't be deleted.
+	 */
+	@AfterEach
+	public void deleteDir() throws IOException {
+		this.dir.toFile().setWritable(true);
+		try (Stream<Path> files = Files.walk(this.dir)) {
+			for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(p);
+			}
+		}
+	}
+
+	/**
+	 * Tests that an up to date snapshot is used and not written again.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testCacheHit() throws Exception {
+		File file = write("a.properties", "a=1\nb=2\n");
+		load(file, WriteBack.SYNC);
+		File cache = new File(file.getPath() + ".cache");
+		Assertions.assertTrue(cache.isFile(), "Snapshot written");
+
+		cache.setLastModified(1000000);
+		Config config = load(file, WriteBack.SYNC);
+		Assertions.assertEquals("1", config.getConfigValue("a"), "Value of a");
+		Assertions.assertEquals("2", config.getConfigValue("b"), "Value of b");
+		Assertions.assertEquals(1000000, cache.lastModified(), "Snapshot not written again");
+	}
+
+	/**
+	 * Tests that an edit is noticed, even if it keeps the size and the
+	 * modification time of the file.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testInvalidation() throws Exception {
+		File file = write("a.properties", "a=1\nb=2\n");
+		load(file, WriteBack.SYNC);
+		long lastModified = file.lastModified();
+
+		Files.write(file.toPath(), "a=9\nb=2\n".getBytes(StandardCharsets.ISO_8859_1));
+		file.setLastModified(lastModified);
+		Config config = load(file, WriteBack.SYNC);
+		Assertions.assertEquals("9", config.getConfigValue("a"), "Edited value");
+
+		Files.write(file.toPath(), "a=9\nb=23\n".getBytes(StandardCharsets.ISO_8859_1));
+		config = load(file, WriteBack.SYNC);
+		Assertions.assertEquals("23", config.getConfigValue("b"), "Value after a longer edit");
+	}
+
+	/**
+	 * Tests that a truncated or damaged snapshot falls back to parsing the
+	 * file and gets replaced.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testCorruptCache() throws Exception {
+		File file = write("a.properties", "a=1\nb=2\n");
+		load(file, WriteBack.SYNC);
+		File cache = new File(file.getPath() + ".cache");
+		long length = cache.length();
+
+		try (RandomAccessFile raf = new RandomAccessFile(cache, "rw")) {
+			raf.setLength(length / 2);
+		}
+		Config config = load(file, WriteBack.SYNC);
+		Assertions.assertEquals("1", config.getConfigValue("a"), "Value with a truncated snapshot");
+		Assertions.assertEquals(length, cache.length(), "Truncated snapshot replaced");
+
+		try (RandomAccessFile raf = new RandomAccessFile(cache, "rw")) {
+			raf.seek(length - 1);
+			int last = raf.read();
+			raf.seek(length - 1);
+			raf.write(last ^ 0xFF);
+		}
+		config = load(file, WriteBack.SYNC);
+		Assertions.assertEquals("2", config.getConfigValue("b"), "Value with a damaged snapshot");
+	}
+
+	/**
+	 * Tests that a config in a directory without write access still loads and
+	 * gets its missing entries, although no snapshot can be written.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testReadOnlyDirectory() throws Exception {
+		File file = write("a.properties", "a=1\n");
+		//Blocks the snapshot, even where the directory stays writable (root).
+		File blocker = new File(file.getPath() + ".cache.tmp");
+		blocker.mkdir();
+		new File(blocker, "blocker").createNewFile();
+		this.dir.toFile().setWritable(false);
+
+		Config config = load(file, WriteBack.SYNC);
+		Assertions.assertEquals("1", config.getConfigValue("a"), "Value of a");
+		Assertions.assertEquals("standard b", config.getConfigValue("b"), "Missing value");
+		Assertions.assertTrue(new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1).contains("b=standard b"), "Missing entry written");
+
+		config = load(file, WriteBack.BACKGROUND);
+		config.awaitWriteBack();
+		Assertions.assertEquals("standard b", config.getConfigValue("b"), "Missing value");
+		Assertions.assertFalse(new File(file.getPath() + ".cache").exists(), "No snapshot");
+	}
+
+	/**
+	 * Tests that writing through a symlink keeps the link and the permissions
+	 * of the config, and that the snapshot gets the same permissions.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testSymlinkAndPermissions() throws Exception {
+		if (!this.dir.getFileSystem().supportedFileAttributeViews().contains("posix")) return;
+		File target = write("target.properties", "a=1\n");
+		Files.setPosixFilePermissions(target.toPath(), PosixFilePermissions.fromString("rw-r-----"));
+		Path link = Files.createSymbolicLink(this.dir.resolve("link.properties"), target.toPath());
+
+		Config config = load(link.toFile(), WriteBack.SYNC);
+		Assertions.assertEquals("standard b", config.getConfigValue("b"), "Missing value");
+		Assertions.assertTrue(Files.isSymbolicLink(link), "Still a link");
+		Assertions.assertTrue(new String(Files.readAllBytes(target.toPath()), StandardCharsets.ISO_8859_1).contains("b=standard b"), "Written through the link");
+		Assertions.assertEquals("rw-r-----", PosixFilePermissions.toString(Files.getPosixFilePermissions(target.toPath())), "Permissions of the config");
+		Path cache = this.dir.resolve("link.properties.cache");
+		Assertions.assertEquals("rw-r-----", PosixFilePermissions.toString(Files.getPosixFilePermissions(cache)), "Permissions of the snapshot");
+	}
+
+	private File write(String name, String content) throws IOException {
+		Path p = this.dir.resolve(name);
+		Files.write(p, content.getBytes(StandardCharsets.ISO_8859_1));
+		return p.toFile();
+	}
+
+	private static Config load(File file, WriteBack writeBack) throws IOException {
+		HashMap<String, String> fields = new HashMap<>();
+		fields.put("a", "standard a");
+		fields.put("b", "standard b");
+		return new Config(file.getPath(), "Test", fields, writeBack);
+	}
+}
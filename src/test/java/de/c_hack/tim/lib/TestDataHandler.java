@@ -0,0 +1,780 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @version 0.2.0
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.c_hack.tim.lib.DataManager.DataChangeEvent;
+import de.c_hack.tim.lib.DataManager.DataCopier;
+import de.c_hack.tim.lib.DataManager.DataHandler;
+import de.c_hack.tim.lib.DataManager.DataMetrics;
+import de.c_hack.tim.lib.DataManager.DataSubscription;
+
+/**
+ * Testing the DataHandler class by saving and loading with a fresh handler.
+ * 
+ * @author Tim Neumann
+ */
+public class TestDataHandler {
+
+	private Path dir;
+
+	/**
+	 * Creates the temporary directory for the data files.
+	 * 
+	 * @throws IOException
+	 *             When the directory can't be created.
+	 */
+	@BeforeEach
+	public void createDir() throws IOException {
+		this.dir = Files.createTempDirectory("TestDataHandler");
+	}
+
+	/**
+	 * Deletes the temporary directory.
+	 * 
+	 * @throws IOException
+	 *             When a file can't be deleted.
+	 */
+	@AfterEach
+	public void deleteDir() throws IOException {
+		try (Stream<Path> files = Files.walk(this.dir)) {
+			for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(p);
+			}
+		}
+	}
+
+	/**
+	 * Tests that removals made before turning on incremental saving are saved.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testIncrementalAfterRemoval() throws Exception {
+		File file = file("data.dat");
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, file);
+		handler.setData(new DataItem(1, "a"));
+		handler.setData(new DataItem(2, "b"));
+		handler.saveData();
+		handler.removeData(Long.valueOf(1));
+		handler.enableIncrementalSaving(5);
+		handler.saveData();
+
+		Assertions.assertEquals(map(2, "b"), reload(file, 1), "Removal before enabling");
+
+		handler.setData(new DataItem(3, "c"));
+		handler.removeData(Long.valueOf(2));
+		handler.saveData();
+		Assertions.assertEquals(map(3, "c"), reload(file, 1), "Delta after the full save");
+	}
+
+	/**
+	 * Tests that objects evicted before turning on incremental saving are
+	 * removed from the files.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testIncrementalAfterEviction() throws Exception {
+		File location = file("shards");
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, location, false, 3);
+		for (int i = 0; i < 6; i++) {
+			handler.setData(new DataItem(i, "v" + i));
+		}
+		handler.saveData();
+		handler.setMaxEntries(2);
+		handler.enableIncrementalSaving(5);
+		handler.saveData();
+
+		Assertions.assertEquals(map(4, "v4", 5, "v5"), reload(location, 3), "Eviction before enabling");
+	}
+
+	/**
+	 * Tests saving delta files and compacting them.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testIncrementalRoundTrip() throws Exception {
+		File file = file("data.dat");
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, file);
+		handler.enableIncrementalSaving(10);
+		for (int i = 0; i < 5; i++) {
+			handler.setData(new DataItem(i, "v" + i));
+		}
+		handler.saveData();
+		handler.removeData(Long.valueOf(2));
+		handler.setData(new DataItem(3, "x"));
+		handler.saveData();
+		handler.setData(new DataItem(5, "v5"));
+		handler.saveData();
+
+		Map<Long, String> expected = map(0, "v0", 1, "v1", 3, "x", 4, "v4", 5, "v5");
+		Assertions.assertEquals(2, deltaFiles(), "Delta files after two incremental saves");
+		Assertions.assertEquals(expected, reload(file, 1), "With delta files");
+
+		handler.compactData();
+		Assertions.assertEquals(0, deltaFiles(), "Delta files after compaction");
+		Assertions.assertEquals(expected, reload(file, 1), "After compaction");
+	}
+
+	/**
+	 * Tests that the first delta after creating the data file only contains
+	 * the later changes, and that a data file written again after it was
+	 * deleted isn't reverted by older deltas.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testIncrementalWithoutDataFile() throws Exception {
+		File file = file("data.dat");
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, file);
+		handler.enableIncrementalSaving(10);
+		for (int i = 0; i < 100; i++) {
+			handler.setData(new DataItem(i, "v" + i));
+		}
+		handler.saveData();
+		long dataBytes = file.length();
+		handler.setData(new DataItem(1, "x"));
+		handler.saveData();
+
+		File delta = Arrays.stream(this.dir.toFile().listFiles()).filter(f -> f.getName().contains("delta")).findFirst().get();
+		Assertions.assertTrue(delta.length() < dataBytes / 10, "Delta only contains the later change");
+		Assertions.assertEquals("x", reload(file, 1).get(Long.valueOf(1)), "Value from the delta");
+
+		Files.delete(file.toPath());
+		handler.setData(new DataItem(1, "y"));
+		handler.saveData();
+		Assertions.assertEquals(0, deltaFiles(), "Older deltas folded");
+		handler.setData(new DataItem(2, "z"));
+		handler.saveData();
+		Map<Long, String> reloaded = reload(file, 1);
+		Assertions.assertEquals(100, reloaded.size(), "Objects after writing the data file again");
+		Assertions.assertEquals("y", reloaded.get(Long.valueOf(1)), "Value not reverted");
+		Assertions.assertEquals("z", reloaded.get(Long.valueOf(2)), "Value from the new delta");
+	}
+
+	/**
+	 * Tests that a handler without incremental saving folds existing delta
+	 * files into the data file on save.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testFullSaveOverDeltas() throws Exception {
+		File file = file("data.dat");
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, file);
+		handler.enableIncrementalSaving(10);
+		handler.setData(new DataItem(1, "a"));
+		handler.saveData();
+		handler.removeData(Long.valueOf(1));
+		handler.setData(new DataItem(2, "b"));
+		handler.saveData();
+
+		DataHandler<Long, DataItem> plain = new DataHandler<>(DataItem.class, file);
+		plain.loadData();
+		plain.setData(new DataItem(3, "c"));
+		plain.saveData();
+
+		Assertions.assertEquals(0, deltaFiles(), "Delta files after a full save");
+		Assertions.assertEquals(map(2, "b", 3, "c"), reload(file, 1), "After a full save");
+	}
+
+	/**
+	 * Tests that the load listener is informed about all objects and bytes
+	 * of all shards.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testLoadProgress() throws Exception {
+		File location = file("shards");
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, location, false, 3);
+		for (int i = 0; i < 5000; i++) {
+			handler.setData(new DataItem(i, "v" + i));
+		}
+		handler.saveData();
+		long size = 0;
+		for (File f : location.listFiles()) {
+			size += f.length();
+		}
+
+		List<long[]> reports = Collections.synchronizedList(new ArrayList<>());
+		DataHandler<Long, DataItem> loaded = new DataHandler<>(DataItem.class, location, false, 3);
+		loaded.loadData((objects, bytes, total) -> reports.add(new long[] { objects, bytes, total }));
+
+		Assertions.assertTrue(reports.size() > 3, "Reports while loading and after each file");
+		long maxObjects = 0;
+		long maxBytes = 0;
+		for (long[] report : reports) {
+			Assertions.assertEquals(size, report[2], "Total bytes");
+			maxObjects = Math.max(maxObjects, report[0]);
+			maxBytes = Math.max(maxBytes, report[1]);
+		}
+		Assertions.assertEquals(5000, maxObjects, "Objects after loading");
+		Assertions.assertEquals(size, maxBytes, "Bytes after loading");
+	}
+
+	/**
+	 * Tests that loading with auto saving on doesn't write the data file.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testNoAutoSaveWhileLoading() throws Exception {
+		File file = file("data.dat");
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, file);
+		for (int i = 0; i < 100; i++) {
+			handler.setData(new DataItem(i, "v" + i));
+		}
+		handler.saveData();
+		file.setLastModified(1000000);
+
+		DataHandler<Long, DataItem> autoSaving = new DataHandler<>(DataItem.class, file, true);
+		autoSaving.loadData();
+		Assertions.assertEquals(100, autoSaving.size(), "Loaded objects");
+		Assertions.assertEquals(1000000, file.lastModified(), "Data file not written");
+		Assertions.assertArrayEquals(new String[] { "data.dat" }, this.dir.toFile().list(), "Files after loading");
+
+		autoSaving.setData(new DataItem(100, "v100"));
+		Assertions.assertTrue(file.lastModified() != 1000000, "Saved after a change");
+	}
+
+	/**
+	 * Tests saving and loading the compressed format with several blocks.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testCompressedRoundTrip() throws Exception {
+		File file = file("data.dat");
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, file);
+		handler.setCompression(true);
+		Map<Long, String> expected = new TreeMap<>();
+		for (int i = 0; i < 2500; i++) {
+			handler.setData(new DataItem(i, "v" + i));
+			expected.put(Long.valueOf(i), "v" + i);
+		}
+		handler.saveData();
+
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		Assertions.assertArrayEquals(new byte[] { 'T', 'L', 'Z', 1 }, Arrays.copyOf(bytes, 4), "Magic bytes");
+		Assertions.assertEquals(expected, reload(file, 1), "After loading");
+	}
+
+	/**
+	 * Tests that a truncated or corrupt compressed block fails the load.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testCorruptCompressedBlock() throws Exception {
+		File file = file("data.dat");
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, file);
+		handler.setCompression(true);
+		for (int i = 0; i < 2500; i++) {
+			handler.setData(new DataItem(i, "v" + i));
+		}
+		handler.saveData();
+		byte[] bytes = Files.readAllBytes(file.toPath());
+
+		Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 10));
+		Assertions.assertThrows(IOException.class, () -> reload(file, 1), "Truncated block");
+
+		//The first byte of the first block, after the magic bytes and the two lengths.
+		byte[] corrupt = bytes.clone();
+		corrupt[12] = (byte) 0xFF;
+		Files.write(file.toPath(), corrupt);
+		Assertions.assertThrows(IOException.class, () -> reload(file, 1), "Corrupt block");
+	}
+
+	/**
+	 * Tests that a batch, in which an object can't be cloned, changes neither
+	 * the handler nor the data file.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testFailingBatch() throws Exception {
+		File file = file("data.dat");
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, file, true);
+		handler.setAll(Arrays.asList(new DataItem(1, "a"), new DataItem(2, "b")));
+		byte[] saved = Files.readAllBytes(file.toPath());
+		handler.setCopier(original -> {
+			if ("bad".equals(original.getValue())) throw new IllegalStateException("Can't clone");
+			return original.clone();
+		});
+
+		Assertions.assertThrows(IllegalStateException.class, () -> handler.setAll(Arrays.asList(new DataItem(3, "c"), new DataItem(4, "bad"), new DataItem(5, "e"))), "setAll");
+		Assertions.assertThrows(IllegalStateException.class, () -> handler.batch(b -> b.remove(Long.valueOf(1)).set(new DataItem(2, "bad"))), "batch");
+
+		Assertions.assertEquals(map(1, "a", 2, "b"), contents(handler), "Handler after the failed batches");
+		Assertions.assertArrayEquals(saved, Files.readAllBytes(file.toPath()), "Data file after the failed batches");
+		Assertions.assertEquals(map(1, "a", 2, "b"), reload(file, 1), "Loaded after the failed batches");
+	}
+
+	/**
+	 * Tests that a custom copier is used for the objects handed in and out,
+	 * and that the identity copier hands out the stored objects themselves.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testCustomCopier() throws Exception {
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, file("data.dat"));
+		AtomicInteger copies = new AtomicInteger();
+		handler.setCopier(original -> {
+			copies.incrementAndGet();
+			return new DataItem(original.getPrimaryID().longValue(), original.getValue());
+		});
+		DataItem item = new DataItem(1, "a");
+		handler.setData(item);
+		DataItem got = handler.getData(Long.valueOf(1));
+		Assertions.assertEquals(2, copies.get(), "Copies when setting and getting");
+		Assertions.assertNotSame(item, got, "Copy handed out");
+		Assertions.assertEquals("a", got.getValue(), "Value of the copy");
+
+		handler.setCopier(DataCopier.identity());
+		handler.setData(item);
+		Assertions.assertSame(item, handler.getData(Long.valueOf(1)), "Identity copier");
+		Assertions.assertEquals(2, copies.get(), "Old copier not used any more");
+	}
+
+	/**
+	 * Tests that a copier returning another class is rejected, but only
+	 * checked once after registering it.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testCopierVerification() throws Exception {
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, file("data.dat"));
+		DataCopier<DataItem> subclass = original -> new DataItem(original.getPrimaryID().longValue(), original.getValue()) {
+			private static final long serialVersionUID = 1L;
+		};
+
+		handler.setCopier(subclass);
+		Assertions.assertThrows(ClassCastException.class, () -> handler.setData(new DataItem(1, "a")), "First copy on an empty handler");
+		Assertions.assertEquals(0, handler.size(), "Nothing stored");
+
+		handler.setCopier(DataCopier.cloning());
+		handler.setData(new DataItem(1, "a"));
+		Assertions.assertThrows(ClassCastException.class, () -> handler.setCopier(subclass), "Registering with data");
+		Assertions.assertEquals(DataItem.class, handler.getData(Long.valueOf(1)).getClass(), "Old copier kept");
+
+		AtomicInteger copies = new AtomicInteger();
+		handler.setCopier(original -> {
+			if (copies.incrementAndGet() == 1) return original.clone();
+			return subclass.copy(original);
+		});
+		Assertions.assertEquals(1, copies.get(), "Verified at registration");
+		Assertions.assertNotNull(handler.getData(Long.valueOf(1)), "Not verified again");
+		Assertions.assertEquals(2, copies.get(), "Copies");
+	}
+
+	/**
+	 * Tests that registered metrics report the objects, but don't keep the
+	 * handler from being garbage collected.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testMetricsRegistration() throws Exception {
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, file("data.dat"));
+		handler.setData(new DataItem(1, "a"));
+		DataMetrics metrics = handler.getMetrics();
+		ObjectName name = metrics.register("TestDataHandler");
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			Assertions.assertEquals(Long.valueOf(1), server.getAttribute(name, "ObjectCount"), "Objects through JMX");
+
+			WeakReference<DataHandler<Long, DataItem>> ref = new WeakReference<>(handler);
+			handler = null;
+			for (int i = 0; i < 100 && ref.get() != null; i++) {
+				System.gc();
+				Thread.sleep(10);
+			}
+			Assertions.assertNull(ref.get(), "Handler garbage collected");
+			Assertions.assertEquals(Long.valueOf(0), server.getAttribute(name, "ObjectCount"), "Objects after the collection");
+		} finally {
+			metrics.unregister();
+		}
+	}
+
+	/**
+	 * Tests that saving replaces the data files completely and ignores a
+	 * temporary file left over from a interrupted save.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testAtomicSave() throws Exception {
+		File file = file("data.dat");
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, file);
+		for (int i = 0; i < 10; i++) {
+			handler.setData(new DataItem(i, "v" + i));
+		}
+		handler.saveData();
+		Files.write(this.dir.resolve("data.dat.tmp"), new byte[] { 1, 2, 3 });
+
+		Assertions.assertEquals(10, reload(file, 1).size(), "Left over temporary file");
+
+		handler.removeData(Long.valueOf(0));
+		handler.saveData();
+		Assertions.assertArrayEquals(new String[] { "data.dat" }, this.dir.toFile().list(), "Files after saving");
+		Assertions.assertEquals(9, reload(file, 1).size(), "After saving again");
+	}
+
+	/**
+	 * Tests that the background saver writes changes within one interval
+	 * with a single save and that closing writes the last changes.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testAsyncSaving() throws Exception {
+		File location = file("shards");
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, location, false, 4);
+		handler.enableAsyncSaving(300, TimeUnit.MILLISECONDS);
+		handler.setData(new DataItem(0, "v0"));
+		handler.saveDataAsync().get();
+
+		Map<Long, String> expected = new TreeMap<>();
+		expected.put(Long.valueOf(0), "v0");
+		handler.setData(new DataItem(1, "v1"));
+		expected.put(Long.valueOf(1), "v1");
+		CompletableFuture<Void> pending = handler.saveDataAsync();
+		for (int i = 2; i < 50; i++) {
+			handler.setData(new DataItem(i, "v" + i));
+			expected.put(Long.valueOf(i), "v" + i);
+		}
+		Assertions.assertSame(pending, handler.saveDataAsync(), "Changes within one interval share one save");
+		pending.get();
+		Assertions.assertEquals(expected, reload(location, 4), "After the background save");
+
+		handler.removeData(Long.valueOf(0));
+		expected.remove(Long.valueOf(0));
+		handler.close();
+		Assertions.assertEquals(expected, reload(location, 4), "After closing");
+	}
+
+	/**
+	 * Tests that a subscription gets the existing objects and then all
+	 * changes in order.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testSubscription() throws Exception {
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, file("data.dat"));
+		handler.setData(new DataItem(0, "old"));
+		List<String> received = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch done = new CountDownLatch(12);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			handler.subscribe(changes -> {
+				for (DataChangeEvent<Long, DataItem> e : changes) {
+					received.add(e.getType() + " " + e.getKey() + (e.getValue() != null ? " " + e.getValue().getValue() : ""));
+					done.countDown();
+				}
+			}, executor, 4, true);
+			List<String> expected = new ArrayList<>();
+			expected.add("PUT 0 old");
+			for (int i = 1; i <= 10; i++) {
+				handler.setData(new DataItem(i, "v" + i));
+				expected.add("PUT " + i + " v" + i);
+			}
+			handler.removeData(Long.valueOf(0));
+			expected.add("REMOVE 0");
+
+			Assertions.assertTrue(done.await(10, TimeUnit.SECONDS), "All changes delivered");
+			Assertions.assertEquals(expected, received, "Delivered changes");
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Tests that a listener throwing an exception cancels its subscription
+	 * with that exception and doesn't hold up later changes.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testFailingSubscription() throws Exception {
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, file("data.dat"));
+		AtomicInteger calls = new AtomicInteger();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			DataSubscription<Long, DataItem> subscription = handler.subscribe(changes -> {
+				calls.incrementAndGet();
+				throw new IllegalStateException("Listener failed");
+			}, executor, 1, false);
+			for (int i = 0; i < 10; i++) {
+				handler.setData(new DataItem(i, "v" + i));
+			}
+			for (int i = 0; i < 500 && !subscription.isCancelled(); i++) {
+				Thread.sleep(10);
+			}
+			Assertions.assertTrue(subscription.isCancelled(), "Cancelled");
+			Assertions.assertEquals("Listener failed", subscription.getFailure().getMessage(), "Failure");
+
+			handler.setData(new DataItem(10, "v10"));
+			Assertions.assertEquals(11, handler.size(), "Objects in the handler");
+			Assertions.assertEquals(1, calls.get(), "Calls of the listener");
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Tests that changing threads wait while the buffer of a subscription is
+	 * full.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testSubscriptionBuffer() throws Exception {
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, file("data.dat"));
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger received = new AtomicInteger();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			handler.subscribe(changes -> {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				received.addAndGet(changes.size());
+			}, executor, 2, false);
+			Thread writer = new Thread(() -> {
+				try {
+					for (int i = 0; i < 10; i++) {
+						handler.setData(new DataItem(i, "v" + i));
+					}
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			});
+			writer.start();
+			writer.join(300);
+			Assertions.assertTrue(writer.isAlive(), "The writer waits for the full buffer");
+
+			release.countDown();
+			writer.join(10000);
+			Assertions.assertFalse(writer.isAlive(), "The writer finished after the listener caught up");
+			for (int i = 0; i < 1000 && received.get() < 10; i++) {
+				Thread.sleep(10);
+			}
+			Assertions.assertEquals(10, received.get(), "Delivered changes");
+			Assertions.assertEquals(10, handler.getAllData().size(), "Objects in the handler");
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Tests that objects with a time to live are hidden once it is over, are
+	 * removed in the background and are gone after saving.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testTimeToLive() throws Exception {
+		File file = file("data.dat");
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, file);
+		handler.enableOrderedKeys(null);
+		handler.setData(new DataItem(1, "short"), 100, TimeUnit.MILLISECONDS);
+		handler.setData(new DataItem(2, "long"), 1, TimeUnit.HOURS);
+		handler.setData(new DataItem(3, "never"));
+		handler.setData(new DataItem(4, "reset"), 100, TimeUnit.MILLISECONDS);
+		handler.setData(new DataItem(4, "kept"));
+		Assertions.assertNotNull(handler.getData(Long.valueOf(1)), "Before the time to live is over");
+
+		Thread.sleep(250);
+		Assertions.assertNull(handler.getData(Long.valueOf(1)), "Get after the time to live");
+		Assertions.assertEquals(3, handler.getAllData().size(), "All data after the time to live");
+		Assertions.assertEquals(3, handler.tail(Long.valueOf(0)).count(), "Ordered stream after the time to live");
+		Assertions.assertEquals(3, handler.page(null, 10).size(), "Page after the time to live");
+		for (int i = 0; i < 100 && handler.size() > 3; i++) {
+			Thread.sleep(20);
+		}
+		Assertions.assertEquals(3, handler.size(), "Size after the sweep");
+
+		handler.saveData();
+		Assertions.assertEquals(map(2, "long", 3, "never", 4, "kept"), reload(file, 1), "After saving");
+	}
+
+	/**
+	 * Tests that a subscription with a full buffer doesn't hold up the expiry
+	 * sweeps.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testSweepWithFullSubscription() throws Exception {
+		DataHandler<Long, DataItem> stalled = new DataHandler<>(DataItem.class, file("stalled.dat"));
+		DataHandler<Long, DataItem> other = new DataHandler<>(DataItem.class, file("other.dat"));
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger received = new AtomicInteger();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			for (int i = 0; i < 5; i++) {
+				stalled.setData(new DataItem(i, "v" + i), 50, TimeUnit.MILLISECONDS);
+			}
+			stalled.subscribe(changes -> {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				received.addAndGet(changes.size());
+			}, executor, 1, false);
+			other.setData(new DataItem(1, "v"), 300, TimeUnit.MILLISECONDS);
+
+			for (int i = 0; i < 200 && (stalled.size() > 0 || other.size() > 0); i++) {
+				Thread.sleep(20);
+			}
+			Assertions.assertEquals(0, stalled.size(), "Swept with a full subscription");
+			Assertions.assertEquals(0, other.size(), "Other handler swept");
+
+			release.countDown();
+			for (int i = 0; i < 500 && received.get() < 5; i++) {
+				Thread.sleep(10);
+			}
+			Assertions.assertEquals(5, received.get(), "Delivered removals");
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Tests that the least recently used objects are removed, when the number
+	 * of objects is limited.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testMaxEntries() throws Exception {
+		File file = file("data.dat");
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, file);
+		for (int i = 1; i <= 4; i++) {
+			handler.setData(new DataItem(i, "v" + i));
+		}
+		handler.setMaxEntries(3);
+		Assertions.assertNull(handler.getData(Long.valueOf(1)), "Oldest removed when limiting");
+
+		handler.getData(Long.valueOf(2));
+		handler.setData(new DataItem(5, "v5"));
+		Assertions.assertEquals(map(2, "v2", 4, "v4", 5, "v5"), contents(handler), "Least recently used removed");
+
+		handler.saveData();
+		Assertions.assertEquals(map(2, "v2", 4, "v4", 5, "v5"), reload(file, 1), "After saving");
+
+		DataHandler<Long, DataItem> limited = new DataHandler<>(DataItem.class, file);
+		limited.setMaxEntries(2);
+		limited.loadData();
+		Assertions.assertEquals(2, limited.size(), "Limit applied on load");
+	}
+
+	private File file(String name) {
+		return this.dir.resolve(name).toFile();
+	}
+
+	private int deltaFiles() {
+		String[] names = this.dir.toFile().list();
+		return (int) Arrays.stream(names).filter(n -> n.contains("delta")).count();
+	}
+
+	/**
+	 * @return The data loaded by a new handler.
+	 */
+	private static Map<Long, String> reload(File location, int shards) throws Exception {
+		DataHandler<Long, DataItem> handler = new DataHandler<>(DataItem.class, location, false, shards);
+		handler.loadData();
+		return contents(handler);
+	}
+
+	private static Map<Long, String> contents(DataHandler<Long, DataItem> handler) {
+		Map<Long, String> ret = new TreeMap<>();
+		for (DataItem item : handler.getAllData().values()) {
+			ret.put(item.getPrimaryID(), item.getValue());
+		}
+		return ret;
+	}
+
+	/**
+	 * @return A map of the given IDs and values.
+	 */
+	private static Map<Long, String> map(Object... idsAndValues) {
+		Map<Long, String> ret = new TreeMap<>();
+		for (int i = 0; i < idsAndValues.length; i += 2) {
+			ret.put(Long.valueOf(((Integer) idsAndValues[i]).longValue()), (String) idsAndValues[i + 1]);
+		}
+		return ret;
+	}
+}
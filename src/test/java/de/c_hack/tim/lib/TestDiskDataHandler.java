@@ -0,0 +1,177 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @version 0.2.0
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.c_hack.tim.lib.DataManager.DiskDataHandler;
+
+/**
+ * Testing the DiskDataHandler class by reopening the data file.
+ * 
+ * @author Tim Neumann
+ */
+public class TestDiskDataHandler {
+
+	private Path dir;
+
+	/**
+	 * Creates the temporary directory for the data file.
+	 * 
+	 * @throws IOException
+	 *             When the directory can't be created.
+	 */
+	@BeforeEach
+	public void createDir() throws IOException {
+		this.dir = Files.createTempDirectory("TestDiskDataHandler");
+	}
+
+	/**
+	 * Deletes the temporary directory.
+	 * 
+	 * @throws IOException
+	 *             When a file can't be deleted.
+	 */
+	@AfterEach
+	public void deleteDir() throws IOException {
+		try (Stream<Path> files = Files.walk(this.dir)) {
+			for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(p);
+			}
+		}
+	}
+
+	/**
+	 * Tests that set, replaced and removed objects survive reopening.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testRoundTrip() throws Exception {
+		File file = this.dir.resolve("data.log").toFile();
+		Map<Long, String> expected = new TreeMap<>();
+		try (DiskDataHandler<Long, DataItem> handler = new DiskDataHandler<>(DataItem.class, file, 2)) {
+			for (int i = 0; i < 10; i++) {
+				handler.setData(new DataItem(i, "v" + i));
+				expected.put(Long.valueOf(i), "v" + i);
+			}
+			handler.removeData(Long.valueOf(3));
+			expected.remove(Long.valueOf(3));
+			handler.setData(new DataItem(5, "x"));
+			expected.put(Long.valueOf(5), "x");
+
+			Assertions.assertEquals(expected, contents(handler), "Before reopening");
+			Assertions.assertNull(handler.getData(Long.valueOf(3)), "Removed object");
+		}
+
+		try (DiskDataHandler<Long, DataItem> handler = new DiskDataHandler<>(DataItem.class, file)) {
+			Assertions.assertEquals(9, handler.size(), "Size after reopening");
+			Assertions.assertEquals(expected, contents(handler), "After reopening");
+			Assertions.assertTrue(handler.getGarbageBytes() > 0, "Replaced and removed records are garbage");
+		}
+	}
+
+	/**
+	 * Tests that a incomplete record at the end of the file is cut off.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testTornTail() throws Exception {
+		File file = this.dir.resolve("data.log").toFile();
+		try (DiskDataHandler<Long, DataItem> handler = new DiskDataHandler<>(DataItem.class, file)) {
+			handler.setData(new DataItem(1, "a"));
+			handler.setData(new DataItem(2, "b"));
+		}
+		long length = file.length();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			//A put record, whose key and value were not written completely.
+			raf.seek(length);
+			raf.writeByte(1);
+			raf.writeInt(100);
+			raf.write(new byte[] { 1, 2, 3 });
+		}
+
+		try (DiskDataHandler<Long, DataItem> handler = new DiskDataHandler<>(DataItem.class, file)) {
+			Assertions.assertEquals(length, file.length(), "Length after cutting off the tail");
+			Assertions.assertEquals(map(1, "a", 2, "b"), contents(handler), "After cutting off the tail");
+			handler.setData(new DataItem(3, "c"));
+		}
+		try (DiskDataHandler<Long, DataItem> handler = new DiskDataHandler<>(DataItem.class, file)) {
+			Assertions.assertEquals(map(1, "a", 2, "b", 3, "c"), contents(handler), "Appended after the cut");
+		}
+	}
+
+	/**
+	 * Tests that compacting keeps the latest objects and frees the garbage.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testCompact() throws Exception {
+		File file = this.dir.resolve("data.log").toFile();
+		try (DiskDataHandler<Long, DataItem> handler = new DiskDataHandler<>(DataItem.class, file)) {
+			for (int i = 0; i < 20; i++) {
+				handler.setData(new DataItem(i % 4, "v" + i));
+			}
+			handler.removeData(Long.valueOf(0));
+			long before = file.length();
+
+			handler.compact();
+			Assertions.assertEquals(0, handler.getGarbageBytes(), "Garbage after compacting");
+			Assertions.assertTrue(file.length() < before, "The file got smaller");
+			Assertions.assertEquals(map(1, "v17", 2, "v18", 3, "v19"), contents(handler), "After compacting");
+			handler.setData(new DataItem(4, "n"));
+		}
+		try (DiskDataHandler<Long, DataItem> handler = new DiskDataHandler<>(DataItem.class, file)) {
+			Assertions.assertEquals(map(1, "v17", 2, "v18", 3, "v19", 4, "n"), contents(handler), "After reopening");
+		}
+	}
+
+	private static Map<Long, String> contents(DiskDataHandler<Long, DataItem> handler) throws Exception {
+		Map<Long, String> ret = new TreeMap<>();
+		for (DataItem item : handler.getAllData().values()) {
+			ret.put(item.getPrimaryID(), item.getValue());
+		}
+		return ret;
+	}
+
+	/**
+	 * @return A map of the given IDs and values.
+	 */
+	private static Map<Long, String> map(Object... idsAndValues) {
+		Map<Long, String> ret = new TreeMap<>();
+		for (int i = 0; i < idsAndValues.length; i += 2) {
+			ret.put(Long.valueOf(((Integer) idsAndValues[i]).longValue()), (String) idsAndValues[i + 1]);
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @version 0.2.0
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testing the per thread log buffers with a sink that collects the lines.
+ * 
+ * @author Tim Neumann
+ */
+public class TestLogBuffers {
+
+	/** Long enough, that the drainer only runs when woken up. */
+	private static final long NO_INTERVAL = TimeUnit.HOURS.toNanos(1);
+
+	private final List<String> written = Collections.synchronizedList(new ArrayList<>());
+
+	/**
+	 * Tests that a thread with a full buffer waits until the drainer wrote
+	 * the lines and then continues.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testFullBufferBlocks() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		LogBuffers buffers = new LogBuffers(2, NO_INTERVAL, false, (line, level) -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.written.add(line);
+		}, () -> {}, (e, lines) -> Assertions.fail("Sink failure " + e));
+		try {
+			Thread writer = new Thread(() -> {
+				for (int i = 0; i < 5; i++) {
+					buffers.append("l" + i, Log.INFO);
+				}
+			});
+			writer.start();
+			writer.join(300);
+			Assertions.assertTrue(writer.isAlive(), "The writer waits for the full buffer");
+
+			release.countDown();
+			writer.join(10000);
+			Assertions.assertFalse(writer.isAlive(), "The writer finished after the lines were written");
+		} finally {
+			release.countDown();
+			buffers.stop();
+		}
+		Assertions.assertEquals(Arrays.asList("l0", "l1", "l2", "l3", "l4"), this.written, "Written lines");
+	}
+
+	/**
+	 * Tests that the lines of several threads are written in the order they
+	 * were logged, including the lines of threads that ended.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testTimestampOrder() throws Exception {
+		LogBuffers buffers = collecting(true);
+		try {
+			buffers.append("0", Log.INFO);
+			inThread(() -> buffers.append("1", Log.INFO));
+			buffers.append("2", Log.INFO);
+			inThread(() -> {
+				buffers.append("3", Log.INFO);
+				buffers.append("4", Log.INFO);
+			});
+			buffers.append("5", Log.INFO);
+			buffers.drain();
+			Assertions.assertEquals(Arrays.asList("0", "1", "2", "3", "4", "5"), this.written, "Lines of all threads");
+		} finally {
+			buffers.stop();
+		}
+	}
+
+	/**
+	 * Tests that the lines of a thread that ended are written exactly once.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testDeadThread() throws Exception {
+		LogBuffers buffers = collecting(false);
+		try {
+			inThread(() -> {
+				for (int i = 0; i < 3; i++) {
+					buffers.append("d" + i, Log.INFO);
+				}
+			});
+			buffers.drain();
+			buffers.drain();
+			Assertions.assertEquals(Arrays.asList("d0", "d1", "d2"), this.written, "Lines of the ended thread");
+		} finally {
+			buffers.stop();
+		}
+	}
+
+	/**
+	 * Tests that stopping writes the lines of all threads and that lines added
+	 * afterwards are written directly.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testStopFlushes() throws Exception {
+		AtomicInteger flushes = new AtomicInteger();
+		LogBuffers buffers = new LogBuffers(1000, NO_INTERVAL, false, (line, level) -> this.written.add(line), flushes::incrementAndGet, (e, lines) -> Assertions.fail("Sink failure " + e));
+		Thread[] writers = new Thread[8];
+		for (int t = 0; t < writers.length; t++) {
+			int thread = t;
+			writers[t] = new Thread(() -> {
+				for (int i = 0; i < 100; i++) {
+					buffers.append(thread + ":" + i, Log.INFO);
+				}
+			});
+			writers[t].start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		buffers.append("main", Log.INFO);
+		buffers.stop();
+		Assertions.assertEquals(801, this.written.size(), "Lines after stopping");
+		Assertions.assertTrue(flushes.get() > 0, "Sink flushed");
+
+		buffers.append("late", Log.INFO);
+		Assertions.assertEquals("late", this.written.get(801), "Line added after stopping");
+	}
+
+	/**
+	 * Tests that a failing sink drops the rest of the drain, reports it once
+	 * and doesn't stop later lines.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testSinkFailure() throws Exception {
+		List<String> failures = new ArrayList<>();
+		LogBuffers buffers = new LogBuffers(10, NO_INTERVAL, false, (line, level) -> {
+			if (line.equals("bad")) throw new IllegalStateException("Broken sink");
+			this.written.add(line);
+		}, () -> {}, (e, lines) -> failures.add(e.getMessage() + ":" + lines));
+		try {
+			buffers.append("a", Log.INFO);
+			buffers.append("bad", Log.INFO);
+			buffers.append("b", Log.INFO);
+			buffers.drain();
+			Assertions.assertEquals(Arrays.asList("a"), this.written, "Lines before the failure");
+			Assertions.assertEquals(Arrays.asList("Broken sink:2"), failures, "Reported failure");
+
+			for (int i = 0; i < 20; i++) {
+				buffers.append("c" + i, Log.INFO);
+			}
+			buffers.drain();
+			Assertions.assertEquals(21, this.written.size(), "Lines after the failure");
+			Assertions.assertEquals(1, failures.size(), "Reported failures");
+		} finally {
+			buffers.stop();
+		}
+	}
+
+	private LogBuffers collecting(boolean timestampOrder) {
+		return new LogBuffers(100, NO_INTERVAL, timestampOrder, (line, level) -> this.written.add(line), () -> {}, (e, lines) -> Assertions.fail("Sink failure " + e));
+	}
+
+	private static void inThread(Runnable r) throws InterruptedException {
+		Thread t = new Thread(r);
+		t.start();
+		t.join();
+	}
+}
@@ -59,4 +59,37 @@ public class TestMisc {
 		Assertions.assertEquals(-1, Misc.findStringInArr(arr, "5", false), "NOT FOUND, cI");
 	}
 
+	/**
+	 * Test method for
+	 * {@link Misc#findStringsInArr(java.lang.String[], java.lang.String[], boolean)}.
+	 */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testFindStringsInArr() {
+		String[] arr = { "asd", "", "a", "bf", "123zu", "BSAG", "bGf", "ASD" };
+		String[] needles = { "ASD", "a", "", "bsag", "asd", "x", null, "bf" };
+
+		Assertions.assertArrayEquals(new int[] { 7, 2, 1, -1, 0, -1, -1, 3 }, Misc.findStringsInArr(arr, needles, true), "Normal");
+		Assertions.assertArrayEquals(new int[] { 0, 2, 1, 5, 0, -1, -1, 3 }, Misc.findStringsInArr(arr, needles, false), "caseInsensitve");
+		Assertions.assertArrayEquals(new int[0], Misc.findStringsInArr(arr, new String[0], true), "No needles");
+	}
+
+	/**
+	 * Test method for
+	 * {@link Misc#findStringInArrParallel(java.lang.String[], java.lang.String, boolean)}.
+	 */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testFindStringInArrParallel() {
+		String[] arr = new String[Misc.PARALLEL_THRESHOLD * 4];
+		for (int i = 0; i < arr.length; i++) {
+			arr[i] = "Key" + (i % (Misc.PARALLEL_THRESHOLD * 3));
+		}
+
+		Assertions.assertEquals(5, Misc.findStringInArrParallel(arr, "Key5", true), "Normal, first of duplicates");
+		Assertions.assertEquals(Misc.PARALLEL_THRESHOLD * 3 - 1, Misc.findStringInArrParallel(arr, "KEY" + (Misc.PARALLEL_THRESHOLD * 3 - 1), false), "caseInsensitve");
+		Assertions.assertEquals(-1, Misc.findStringInArrParallel(arr, "KEY5", true), "NOT FOUND, normal");
+		Assertions.assertEquals(-1, Misc.findStringInArrParallel(arr, "x", false), "NOT FOUND, cI");
+	}
+
 }
@@ -0,0 +1,210 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @version 0.2.0
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.c_hack.tim.lib.DataManager.DataHandler;
+import de.c_hack.tim.lib.DataManager.IntDataHandler;
+import de.c_hack.tim.lib.DataManager.LongDataHandler;
+
+/**
+ * Testing the LongDataHandler and IntDataHandler classes by saving and
+ * loading with a fresh handler.
+ * 
+ * @author Tim Neumann
+ */
+public class TestPrimitiveDataHandlers {
+
+	private Path dir;
+
+	/**
+	 * Creates the temporary directory for the data files.
+	 * 
+	 * @throws IOException
+	 *             When the directory can't be created.
+	 */
+	@BeforeEach
+	public void createDir() throws IOException {
+		this.dir = Files.createTempDirectory("TestPrimitiveDataHandlers");
+	}
+
+	/**
+	 * Deletes the temporary directory.
+	 * 
+	 * @throws IOException
+	 *             When a file can't be deleted.
+	 */
+	@AfterEach
+	public void deleteDir() throws IOException {
+		try (Stream<Path> files = Files.walk(this.dir)) {
+			for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(p);
+			}
+		}
+	}
+
+	/**
+	 * Tests setting, replacing and removing objects of a LongDataHandler,
+	 * before and after reloading.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testLongRoundTrip() throws Exception {
+		File file = this.dir.resolve("long.dat").toFile();
+		LongDataHandler<LongItem> handler = new LongDataHandler<>(LongItem.class, file);
+		Map<Long, String> expected = new TreeMap<>();
+		long[] ids = new long[2000];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = (i - 1000) * 1000000007L;
+		}
+		ids[0] = Long.MIN_VALUE;
+		ids[1] = Long.MAX_VALUE;
+		for (long id : ids) {
+			handler.setData(new LongItem(id, "v" + id));
+			expected.put(Long.valueOf(id), "v" + id);
+		}
+		for (int i = 0; i < ids.length; i += 3) {
+			handler.removeData(ids[i]);
+			expected.remove(Long.valueOf(ids[i]));
+		}
+		handler.setData(new LongItem(ids[1], "replaced"));
+		expected.put(Long.valueOf(ids[1]), "replaced");
+
+		Assertions.assertEquals(expected.size(), handler.size(), "Size");
+		Assertions.assertFalse(handler.containsData(ids[0]), "Removed object");
+		Assertions.assertNull(handler.getData(ids[3]), "Removed object");
+		Assertions.assertEquals("replaced", handler.getData(ids[1]).getValue(), "Replaced object");
+		Assertions.assertEquals(expected, contents(handler), "Before saving");
+		handler.saveData();
+
+		LongDataHandler<LongItem> loaded = new LongDataHandler<>(LongItem.class, file);
+		loaded.loadData();
+		Assertions.assertEquals(expected, contents(loaded), "After loading");
+
+		loaded.removeData(ids[1]);
+		expected.remove(Long.valueOf(ids[1]));
+		loaded.saveData();
+		LongDataHandler<LongItem> reloaded = new LongDataHandler<>(LongItem.class, file);
+		reloaded.loadData();
+		Assertions.assertEquals(expected, contents(reloaded), "After removing and loading again");
+	}
+
+	/**
+	 * Tests setting, replacing and removing objects of an IntDataHandler,
+	 * before and after reloading.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testIntRoundTrip() throws Exception {
+		File file = this.dir.resolve("int.dat").toFile();
+		IntDataHandler<IntItem> handler = new IntDataHandler<>(IntItem.class, file);
+		Map<Integer, String> expected = new TreeMap<>();
+		int[] ids = new int[2000];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = (i - 1000) * 1000003;
+		}
+		ids[0] = Integer.MIN_VALUE;
+		ids[1] = Integer.MAX_VALUE;
+		for (int id : ids) {
+			handler.setData(new IntItem(id, "v" + id));
+			expected.put(Integer.valueOf(id), "v" + id);
+		}
+		for (int i = 0; i < ids.length; i += 3) {
+			handler.removeData(ids[i]);
+			expected.remove(Integer.valueOf(ids[i]));
+		}
+		handler.setData(new IntItem(ids[1], "replaced"));
+		expected.put(Integer.valueOf(ids[1]), "replaced");
+
+		Assertions.assertEquals(expected.size(), handler.size(), "Size");
+		Assertions.assertFalse(handler.containsData(ids[0]), "Removed object");
+		Assertions.assertNull(handler.getData(ids[3]), "Removed object");
+		Assertions.assertEquals("replaced", handler.getData(ids[1]).getValue(), "Replaced object");
+		Assertions.assertEquals(expected, contents(handler), "Before saving");
+		handler.saveData();
+
+		IntDataHandler<IntItem> loaded = new IntDataHandler<>(IntItem.class, file);
+		loaded.loadData();
+		Assertions.assertEquals(expected, contents(loaded), "After loading");
+
+		loaded.removeData(ids[1]);
+		expected.remove(Integer.valueOf(ids[1]));
+		loaded.saveData();
+		IntDataHandler<IntItem> reloaded = new IntDataHandler<>(IntItem.class, file);
+		reloaded.loadData();
+		Assertions.assertEquals(expected, contents(reloaded), "After removing and loading again");
+	}
+
+	/**
+	 * Tests that a compressed file of a LongDataHandler can be loaded by a
+	 * DataHandler.
+	 * 
+	 * @throws Exception
+	 *             On failure.
+	 */
+	@Test
+	public void testLongCompressedWithDataHandler() throws Exception {
+		File file = this.dir.resolve("long.dat").toFile();
+		LongDataHandler<LongItem> handler = new LongDataHandler<>(LongItem.class, file);
+		handler.setCompression(true);
+		Map<Long, String> expected = new TreeMap<>();
+		for (long id = 0; id < 1500; id++) {
+			handler.setData(new LongItem(id, "v" + id));
+			expected.put(Long.valueOf(id), "v" + id);
+		}
+		handler.saveData();
+
+		DataHandler<Long, LongItem> generic = new DataHandler<>(LongItem.class, file);
+		generic.loadData();
+		Map<Long, String> loaded = new TreeMap<>();
+		for (LongItem item : generic.getAllData().values()) {
+			loaded.put(item.getPrimaryID(), item.getValue());
+		}
+		Assertions.assertEquals(expected, loaded, "Loaded by a DataHandler");
+	}
+
+	private static Map<Long, String> contents(LongDataHandler<LongItem> handler) {
+		Map<Long, String> ret = new TreeMap<>();
+		for (LongItem item : handler.getAllData().values()) {
+			ret.put(item.getPrimaryID(), item.getValue());
+		}
+		return ret;
+	}
+
+	private static Map<Integer, String> contents(IntDataHandler<IntItem> handler) {
+		Map<Integer, String> ret = new TreeMap<>();
+		for (IntItem item : handler.getAllData().values()) {
+			ret.put(item.getPrimaryID(), item.getValue());
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @version 0.2.0
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testing the StringArrayIndex class
+ * 
+ * @author Tim Neumann
+ */
+public class TestStringArrayIndex {
+
+	/**
+	 * Test method for {@link StringArrayIndex#find(java.lang.String, boolean)}.
+	 */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testFindStringBoolean() {
+		String[] arr = { "asd", "", "a", "bf", "123zu", "BSAG", "bGf", "ASD", null, "bf" };
+		StringArrayIndex index = new StringArrayIndex(arr);
+
+		Assertions.assertEquals(0, index.find("asd", true), "Normal lowercase only");
+		Assertions.assertEquals(2, index.find("a", true), "Normal lowercase only");
+		Assertions.assertEquals(1, index.find("", true), "Normal lowercase only, empty");
+		Assertions.assertEquals(3, index.find("bf", true), "Normal, first of duplicates");
+		Assertions.assertEquals(5, index.find("BSAG", true), "Normal");
+		Assertions.assertEquals(7, index.find("ASD"), "Normal, differs only in case");
+		Assertions.assertEquals(0, index.find("ASD", false), "caseInsensitve, first of duplicates");
+		Assertions.assertEquals(0, index.find("aSd", false), "caseInsensitve");
+		Assertions.assertEquals(1, index.find("", false), "caseInsensitve, empty");
+		Assertions.assertEquals(5, index.find("bsag", false), "caseInsensitve");
+		Assertions.assertEquals(6, index.find("BGF", false), "caseInsensitve");
+
+		Assertions.assertEquals(-1, index.find("as", true), "NOT FOUND, normal");
+		Assertions.assertEquals(-1, index.find("BF", true), "NOT FOUND, normal");
+		Assertions.assertEquals(-1, index.find("123zU", true), "NOT FOUND, normal");
+		Assertions.assertEquals(-1, index.find("as", false), "NOT FOUND, cI");
+		Assertions.assertEquals(-1, index.find(null, false), "NOT FOUND, null");
+	}
+
+	/**
+	 * Tests that the index finds the same elements as
+	 * {@link Misc#findStringInArr(String[], String, boolean)}.
+	 */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testSameAsLinearSearch() {
+		String[] arr = { "Stra\u00dfe", "STRASSE", "I", "\u0131", "\u0130", "i", "\u03a3", "\u03c2", "\u03c3", "\u01c5", "\u01c6", "\u01c4", "x" };
+		StringArrayIndex index = new StringArrayIndex(arr);
+		String[] needles = { "stra\u00dfe", "strasse", "i", "I", "\u0131", "\u0130", "\u03c3", "\u03a3", "\u03c2", "\u01c6", "\u01c5", "\u01c4", "X", "y" };
+
+		for (String needle : needles) {
+			Assertions.assertEquals(Misc.findStringInArr(arr, needle, true), index.find(needle, true), "Case sensitive: " + needle);
+			Assertions.assertEquals(Misc.findStringInArr(arr, needle, false), index.find(needle, false), "Case insensitive: " + needle);
+		}
+	}
+
+	/**
+	 * Tests a array larger than the initial table.
+	 */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testLarge() {
+		String[] arr = new String[10000];
+		for (int i = 0; i < arr.length; i++) {
+			arr[i] = "Key" + i;
+		}
+		StringArrayIndex index = new StringArrayIndex(arr);
+
+		for (int i = 0; i < arr.length; i++) {
+			Assertions.assertEquals(i, index.find("Key" + i), "Case sensitive");
+			Assertions.assertEquals(i, index.find("KEY" + i, false), "Case insensitive");
+		}
+		Assertions.assertEquals(-1, index.find("KEY1"), "NOT FOUND, normal");
+	}
+}
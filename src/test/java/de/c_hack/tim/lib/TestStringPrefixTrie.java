@@ -0,0 +1,78 @@
+/*
+ * TimLib
+ * 
+ * A collection of useful classes and methods.
+ * 
+ * @version 0.2.0
+ * @author Tim Neumann
+ * @copyright (c) Tim Neumann 2015-2018
+ * @license:
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ */
+package de.c_hack.tim.lib;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testing the StringPrefixTrie class
+ * 
+ * @author Tim Neumann
+ */
+public class TestStringPrefixTrie {
+	private static final String[] ARR = { "asd", "", "a", "bf", "123zu", "BSAG", "bGf", "ASD", null, "asdf" };
+
+	/**
+	 * Test method for
+	 * {@link StringPrefixTrie#findFirstStartingWith(java.lang.String, boolean)}.
+	 */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testFindFirstStartingWith() {
+		StringPrefixTrie trie = new StringPrefixTrie(ARR);
+
+		Assertions.assertEquals(0, trie.findFirstStartingWith("as", true), "Normal");
+		Assertions.assertEquals(0, trie.findFirstStartingWith("", true), "Normal, empty");
+		Assertions.assertEquals(7, trie.findFirstStartingWith("AS", true), "Normal");
+		Assertions.assertEquals(9, trie.findFirstStartingWith("asdf", true), "Normal, complete");
+		Assertions.assertEquals(0, trie.findFirstStartingWith("AS", false), "caseInsensitve");
+		Assertions.assertEquals(3, trie.findFirstStartingWith("B", false), "caseInsensitve");
+		Assertions.assertEquals(6, trie.findFirstStartingWith("bG", true), "Normal");
+
+		Assertions.assertEquals(-1, trie.findFirstStartingWith("Bs", true), "NOT FOUND, normal");
+		Assertions.assertEquals(-1, trie.findFirstStartingWith("asdfg", false), "NOT FOUND, cI");
+	}
+
+	/**
+	 * Test method for
+	 * {@link StringPrefixTrie#findAllStartingWith(java.lang.String, boolean)}.
+	 */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testFindAllStartingWith() {
+		StringPrefixTrie trie = new StringPrefixTrie(ARR);
+
+		Assertions.assertArrayEquals(new int[] { 0, 2, 9 }, trie.findAllStartingWith("a", true), "Normal");
+		Assertions.assertArrayEquals(new int[] { 0, 2, 7, 9 }, trie.findAllStartingWith("A", false), "caseInsensitve");
+		Assertions.assertArrayEquals(new int[] { 3, 5, 6 }, trie.findAllStartingWith("b", false), "caseInsensitve");
+		Assertions.assertArrayEquals(new int[] { 0, 1, 2, 3, 4, 5, 6, 7, 9 }, trie.findAllStartingWith("", false), "Empty");
+		Assertions.assertArrayEquals(new int[0], trie.findAllStartingWith("x", false), "NOT FOUND");
+	}
+
+	/**
+	 * Test method for
+	 * {@link StringPrefixTrie#findAllPrefixesOf(java.lang.String, boolean)}.
+	 */
+	@SuppressWarnings("static-method")
+	@Test
+	public void testFindAllPrefixesOf() {
+		StringPrefixTrie trie = new StringPrefixTrie(ARR);
+
+		Assertions.assertArrayEquals(new int[] { 0, 1, 2, 9 }, trie.findAllPrefixesOf("asdfgh", true), "Normal");
+		Assertions.assertArrayEquals(new int[] { 0, 1, 2, 7, 9 }, trie.findAllPrefixesOf("Asdfgh", false), "caseInsensitve");
+		Assertions.assertArrayEquals(new int[] { 1 }, trie.findAllPrefixesOf("Asdfgh", true), "Normal, only empty");
+	}
+}